@@ -0,0 +1,34 @@
+package skeptical.bench;
+
+/**
+ * A small timing harness shared by the benchmarks in this directory.
+ * Each task is run for a few warmup rounds so the JIT settles, then timed
+ * over several measured rounds; the best round is reported.
+ */
+public final class Bench {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Written with every task's result so the JIT cannot discard the work.
+    public static volatile long sink;
+
+    public interface Task {
+        long run(int ops);
+    }
+
+    private Bench() { }
+
+    public static double nsPerOp(String name, int ops, Task task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            sink += task.run(ops);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += task.run(ops);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double nsPerOp = (double) best / ops;
+        System.out.printf("%-40s %12.2f ns/op%n", name, nsPerOp);
+        return nsPerOp;
+    }
+}
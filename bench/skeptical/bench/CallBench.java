@@ -0,0 +1,34 @@
+package skeptical.bench;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * Function call overhead in the tree-walking Evaluator, on two recursive
+ * programs: fib 20 (21891 calls) and ackermann 2, 200 (81405 calls).
+ * Each timed round runs a program often enough to make about a million
+ * calls. Reports the time per call.
+ */
+public class CallBench {
+    private static final String[] PROGRAMS = { "fib.skp", "ackermann.skp" };
+    private static final int[] CALLS = { 21891, 81405 };
+    private static final int CALLS_PER_ROUND = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (int i = 0; i < PROGRAMS.length; i++) {
+            AST.Program p = reader.parse(Paths.get("bench/programs", PROGRAMS[i]));
+            Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+            int runs = CALLS_PER_ROUND / CALLS[i];
+            Bench.nsPerOp("call in " + PROGRAMS[i], runs * CALLS[i], ops -> {
+                for (int r = 0; r < runs; r++)
+                    eval.valueOf(p);
+                return ops;
+            });
+        }
+    }
+}
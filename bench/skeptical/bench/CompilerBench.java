@@ -0,0 +1,36 @@
+package skeptical.bench;
+
+import java.io.IOException;
+
+import skeptical.AST;
+import skeptical.CompiledProgram;
+import skeptical.Compiler;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * Compares the tree-walking Evaluator with the bytecode Compiler on the
+ * programs in bench/programs. Compilation happens once, outside the timed
+ * runs, as it would for a long-running job.
+ */
+public class CompilerBench {
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (String name : args.length > 0 ? args : EvaluatorBench.PROGRAMS) {
+            String source = Reader.readFile("bench/programs/" + name);
+            AST.Program p = reader.parse(source);
+            Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+            CompiledProgram compiled = new Compiler().compile(reader.parse(source));
+            Bench.nsPerOp("interpret " + name, 1, ops -> {
+                for (int i = 0; i < ops; i++)
+                    eval.valueOf(p);
+                return ops;
+            });
+            Bench.nsPerOp("compiled  " + name, 1, ops -> {
+                for (int i = 0; i < ops; i++)
+                    compiled.execute(reader, EvaluatorBench.NULL_OUT);
+                return ops;
+            });
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package skeptical.bench;
+
+import java.lang.management.ManagementFactory;
+
+import skeptical.AST;
+import skeptical.CompiledProgram;
+import skeptical.Compiler;
+import skeptical.Evaluator;
+import skeptical.IrProgram;
+import skeptical.Lowerer;
+import skeptical.Reader;
+
+/**
+ * Builds a string of 10 MB (by default; the first argument is the size in
+ * MB) ten characters at a time with SET s TO s + ... in a loop, then
+ * DISPLAYs it, in each engine. The time per append stays flat as the size
+ * grows only if appending does not copy the string built so far.
+ *
+ * Appending in place has a cost in memory, measured last: a short prefix
+ * kept in a variable holds on to the whole buffer that later appends fill.
+ * The retained bytes are the heap still in use, after a GC, while the
+ * Evaluator's globals keep a 100-character prefix of the big string.
+ */
+public class ConcatBench {
+    private static final String PIECE = "0123456789";
+
+    public static void main(String[] args) {
+        int appends = (args.length > 0 ? Integer.parseInt(args[0]) : 10) * 1_000_000 / PIECE.length();
+        String source = "STATIC DIVISION.\nPROGRAM-ID. concat.\nDYNAMIC DIVISION.\n"
+                + "SET s TO \"\".\nSTART i AS 1 TO " + appends + " DOING\n\tSET s TO s + \"" + PIECE + "\".\n"
+                + "DISPLAY s.\n";
+        Reader reader = new Reader();
+        AST.Program p = reader.parse(source);
+        Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+        IrProgram lowered = new Lowerer().lower(reader.parse(source));
+        CompiledProgram compiled = new Compiler().compile(reader.parse(source));
+        Bench.nsPerOp("interpret, per append", appends, ops -> {
+            eval.valueOf(p);
+            return ops;
+        });
+        Bench.nsPerOp("ir, per append", appends, ops -> {
+            lowered.execute(reader, EvaluatorBench.NULL_OUT);
+            return ops;
+        });
+        Bench.nsPerOp("compiled, per append", appends, ops -> {
+            compiled.execute(reader, EvaluatorBench.NULL_OUT);
+            return ops;
+        });
+
+        AST.Program keepsPrefix = reader.parse("STATIC DIVISION.\nPROGRAM-ID. prefix.\nDYNAMIC DIVISION.\n"
+                + "SET s TO \"\".\nSTART i AS 1 TO " + appends + " DOING\n\tSET s TO s + \"" + PIECE + "\".\n"
+                + "\tIF i == 10 THEN\n\t\tSET p TO s.\nSET s TO \"\".\n");
+        AST.Program empty = reader.parse("STATIC DIVISION.\nPROGRAM-ID. empty.\nDYNAMIC DIVISION.\n"
+                + "SET s TO \"\".\n");
+        eval.valueOf(keepsPrefix);
+        long retained = usedHeap();
+        eval.valueOf(empty);
+        retained -= usedHeap();
+        System.out.printf("%-40s %12.2f MB%n", "retained by a 100-char prefix", retained / 1e6);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,86 @@
+package skeptical.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import skeptical.Env;
+import skeptical.Env.ExtendEnv;
+import skeptical.Env.GlobalEnv;
+import skeptical.Symbol;
+import skeptical.Value;
+
+/**
+ * Measures variable-read throughput with 1, 2, 4, ... reader threads up to
+ * the number of available cores. Each reader looks names up through an
+ * ExtendEnv chain that ends in a shared GlobalEnv, while one writer keeps
+ * rebinding globals. Lock-free reads should scale roughly with cores.
+ */
+public class ConcurrentEnvBench {
+    private static final int GLOBALS = 100;
+    private static final int LOCALS = 8;
+    private static final long RUN_MILLIS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        GlobalEnv global = new GlobalEnv();
+        Symbol[] names = new Symbol[GLOBALS + LOCALS];
+        for (int i = 0; i < GLOBALS; i++) {
+            names[i] = Symbol.of("g" + i);
+            global.extend(names[i], new Value(i));
+        }
+        Env env = global;
+        for (int i = 0; i < LOCALS; i++) {
+            names[GLOBALS + i] = Symbol.of("l" + i);
+            env = new ExtendEnv(env, names[GLOBALS + i], new Value(i));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            run(threads, env, global, names); // warmup
+            double mops = run(threads, env, global, names);
+            System.out.printf("%3d reader thread(s) %12.1f Mreads/s%n", threads, mops);
+        }
+    }
+
+    private static double run(int threads, Env env, GlobalEnv global, Symbol[] names)
+            throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000;
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            readers[t] = new Thread(() -> {
+                await(start);
+                long n = 0, sum = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1024; i++)
+                        sum += (long) env.get(names[(seed + i) % names.length]).asNumber();
+                    n += 1024;
+                }
+                reads.add(n);
+                Bench.sink += sum;
+            });
+            readers[t].start();
+        }
+        Thread writer = new Thread(() -> {
+            await(start);
+            for (int i = 0; System.nanoTime() < deadline; i++)
+                global.extend(names[i % GLOBALS], new Value(i));
+        });
+        writer.start();
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread r : readers)
+            r.join();
+        writer.join();
+        return reads.sum() / ((System.nanoTime() - begin) / 1e3);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package skeptical.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import skeptical.BatchRunner;
+import skeptical.Client;
+import skeptical.Daemon;
+
+/**
+ * Per-request latency of the interpreter Daemon against launching a fresh
+ * JVM for every script. Three ways of running the same example:
+ * <ul>
+ * <li>request: the Client's request from this (warm) JVM, i.e. the
+ * daemon's own share of the latency,</li>
+ * <li>cold: a new JVM running Interpreter --batch, and</li>
+ * <li>client: a new JVM running the thin Client against the warm daemon.</li>
+ * </ul>
+ * The daemon runs inside this JVM, so on a machine with few cores the
+ * launches compete with its JIT threads; time them from a shell as well.
+ */
+public class DaemonBench {
+    public static void main(String[] args) throws Exception {
+        String script = args.length > 0 ? args[0] : "hello.skp";
+        Path socket = Files.createTempDirectory("skeptical").resolve("bench.sock");
+        Daemon daemon = new Daemon(socket, BatchRunner.Engine.EVALUATOR, 1);
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.start();
+        while (!Files.exists(socket))
+            Thread.sleep(10);
+
+        Bench.nsPerOp("daemon request " + script, 100, ops -> {
+            try {
+                for (int i = 0; i < ops; i++)
+                    Client.run(socket, script, new ByteArrayInputStream(new byte[0]), OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return ops;
+        });
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        Bench.nsPerOp("cold launch " + script, 1,
+                ops -> launch(ops, java, "-cp", classpath, "skeptical.Interpreter", "--batch", script));
+        Bench.nsPerOp("client launch " + script, 1,
+                ops -> launch(ops, java, "-cp", classpath, "skeptical.Client", "--socket", socket.toString(), script));
+        System.out.println(daemon.cache());
+        daemon.close();
+        server.join();
+        Files.deleteIfExists(socket.getParent());
+    }
+
+    private static long launch(int ops, String... command) {
+        try {
+            for (int i = 0; i < ops; i++) {
+                Process p = new ProcessBuilder(command).redirectInput(new File("/dev/null"))
+                        .redirectOutput(new File("/dev/null"))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                if (p.waitFor() != 0)
+                    throw new RuntimeException(String.join(" ", command) + " failed");
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return ops;
+    }
+}
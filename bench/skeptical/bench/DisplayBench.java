@@ -0,0 +1,66 @@
+package skeptical.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.OutputSink;
+import skeptical.Reader;
+import skeptical.Value;
+
+/**
+ * DISPLAY throughput into /dev/null, so that the cost measured is the
+ * interpreter's and the system calls', not a terminal's. Compares the
+ * former per-line path (println on an autoflushing PrintStream, like
+ * System.out) with OutputSink over that stream and over a FileChannel,
+ * first for bare lines of numbers and strings, then for lines.skp, which
+ * displays two million lines. Reports the time per line.
+ */
+public class DisplayBench {
+    private static final int LINES = 1_000_000;
+    private static final String DEV_NULL = "/dev/null";
+
+    public static void main(String[] args) throws IOException {
+        Value[] values = { Value.of(42), new Value(1234567.0), new Value("line of the report"), new Value(0.5) };
+        PrintStream stream = new PrintStream(new FileOutputStream(DEV_NULL), true);
+        OutputSink buffered = OutputSink.of(stream);
+        OutputSink channel = new OutputSink(FileChannel.open(Paths.get(DEV_NULL), StandardOpenOption.WRITE));
+
+        Bench.nsPerOp("println per line", LINES, ops -> {
+            for (int i = 0; i < ops; i++)
+                stream.println(values[i & 3].asString());
+            return ops;
+        });
+        Bench.nsPerOp("OutputSink, PrintStream", LINES, ops -> {
+            for (int i = 0; i < ops; i++)
+                buffered.display(values[i & 3]);
+            buffered.flush();
+            return ops;
+        });
+        Bench.nsPerOp("OutputSink, FileChannel", LINES, ops -> {
+            for (int i = 0; i < ops; i++)
+                channel.display(values[i & 3]);
+            channel.flush();
+            return ops;
+        });
+
+        Reader reader = new Reader();
+        AST.Program p = reader.parse(Paths.get("bench/programs", "lines.skp"));
+        Evaluator viaStream = new Evaluator(reader, buffered);
+        Evaluator viaChannel = new Evaluator(reader, channel);
+        Bench.nsPerOp("lines.skp, PrintStream", 2 * LINES, ops -> {
+            viaStream.valueOf(p);
+            return ops;
+        });
+        Bench.nsPerOp("lines.skp, FileChannel", 2 * LINES, ops -> {
+            viaChannel.valueOf(p);
+            return ops;
+        });
+        channel.close();
+    }
+}
@@ -0,0 +1,35 @@
+package skeptical.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * Baseline for the tree-walking Evaluator: runs the representative programs
+ * in bench/programs (an arithmetic loop, recursion through CALL, and string
+ * DISPLAY) and reports the time per whole-program run. Programs are parsed
+ * once; DISPLAY output is discarded.
+ */
+public class EvaluatorBench {
+    static final String[] PROGRAMS = { "arith.skp", "fib.skp", "display.skp" };
+
+    static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (String name : args.length > 0 ? args : PROGRAMS) {
+            AST.Program p = reader.parse(Paths.get("bench/programs", name));
+            Evaluator eval = new Evaluator(reader, NULL_OUT);
+            Bench.nsPerOp("evaluate " + name, 1, ops -> {
+                for (int i = 0; i < ops; i++)
+                    eval.valueOf(p);
+                return ops;
+            });
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package skeptical.bench;
+
+import skeptical.Env.GlobalEnv;
+import skeptical.Symbol;
+import skeptical.Value;
+
+/**
+ * Compares GlobalEnv lookup cost as the number of bindings grows.
+ * With the hashed table the cost per lookup should stay flat from
+ * 10 to 100k bindings.
+ */
+public class GlobalEnvBench {
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        for (int bindings : new int[] { 10, 1_000, 100_000 }) {
+            GlobalEnv env = new GlobalEnv();
+            Symbol[] names = new Symbol[bindings];
+            for (int i = 0; i < bindings; i++) {
+                names[i] = Symbol.of("var" + i);
+                env.extend(names[i], new Value(i));
+            }
+            Bench.nsPerOp("GlobalEnv.get, " + bindings + " bindings", LOOKUPS, ops -> {
+                long sum = 0;
+                for (int i = 0; i < ops; i++)
+                    sum += (long) env.get(names[i % bindings]).asNumber();
+                return sum;
+            });
+        }
+    }
+}
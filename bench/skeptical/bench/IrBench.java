@@ -0,0 +1,48 @@
+package skeptical.bench;
+
+import java.io.IOException;
+
+import skeptical.AST;
+import skeptical.CompiledProgram;
+import skeptical.Compiler;
+import skeptical.Evaluator;
+import skeptical.IrProgram;
+import skeptical.Lowerer;
+import skeptical.Reader;
+
+/**
+ * Compares the tree-walking Evaluator with the Lowerer's register
+ * instructions on the programs in bench/programs, with the bytecode
+ * Compiler as a reference point. Lowering and compilation happen once,
+ * outside the timed runs.
+ */
+public class IrBench {
+    private static final String[] PROGRAMS = { "arith.skp", "fib.skp", "display.skp", "ackermann.skp" };
+    private static final int RUNS = 10; // per round: IrProgram.run is one large method, slow to settle
+
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (String name : args.length > 0 ? args : PROGRAMS) {
+            String source = Reader.readFile("bench/programs/" + name);
+            AST.Program p = reader.parse(source);
+            Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+            IrProgram lowered = new Lowerer().lower(reader.parse(source));
+            CompiledProgram compiled = new Compiler().compile(reader.parse(source));
+            Bench.nsPerOp("interpret " + name, RUNS, ops -> {
+                for (int i = 0; i < ops; i++)
+                    eval.valueOf(p);
+                return ops;
+            });
+            Bench.nsPerOp("ir        " + name, RUNS, ops -> {
+                for (int i = 0; i < ops; i++)
+                    lowered.execute(reader, EvaluatorBench.NULL_OUT);
+                return ops;
+            });
+            Bench.nsPerOp("compiled  " + name, RUNS, ops -> {
+                for (int i = 0; i < ops; i++)
+                    compiled.execute(reader, EvaluatorBench.NULL_OUT);
+                return ops;
+            });
+        }
+    }
+}
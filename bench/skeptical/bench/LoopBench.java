@@ -0,0 +1,35 @@
+package skeptical.bench;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * A 10M-iteration counted loop in the tree-walking Evaluator, once with a
+ * body that reads the loop variable and once with a body that doesn't
+ * touch it, at the top level (a global) and inside a FUNCTION (a local).
+ */
+public class LoopBench {
+    private static final int ITERATIONS = 10_000_000;
+
+    private static final String[][] PROGRAMS = {
+        { "global, body reads i", "SET s TO 0.\nSTART i AS 1 TO " + ITERATIONS + " DOING\n\tSET s TO s + i.\nDISPLAY s.\n" },
+        { "global, body ignores i", "SET s TO 0.\nSTART i AS 1 TO " + ITERATIONS + " DOING\n\tSET s TO s + 1.\nDISPLAY s.\n" },
+        { "local, body reads i", "FUNCTION f WITH n.\n\tSET s TO 0.\n\tSTART i AS 1 TO n DOING\n\t\tSET s TO s + i.\n"
+                + "RETURN s.\nDISPLAY CALL f WITH " + ITERATIONS + ".\n" },
+        { "local, body ignores i", "FUNCTION f WITH n.\n\tSET s TO 0.\n\tSTART i AS 1 TO n DOING\n\t\tSET s TO s + 1.\n"
+                + "RETURN s.\nDISPLAY CALL f WITH " + ITERATIONS + ".\n" },
+    };
+
+    public static void main(String[] args) {
+        Reader reader = new Reader();
+        for (String[] program : PROGRAMS) {
+            AST.Program p = reader.parse("STATIC DIVISION.\nPROGRAM-ID. loop.\nDYNAMIC DIVISION.\n" + program[1]);
+            Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+            Bench.nsPerOp(program[0], ITERATIONS, ops -> {
+                eval.valueOf(p);
+                return ops;
+            });
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package skeptical.bench;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.MemoCache;
+import skeptical.Reader;
+
+/**
+ * Memoization of pure functions: runs fib 20 and ackermann 2, 200 without
+ * memo caches, with the default LRU cache, and with small LRU and FIFO
+ * caches that have to evict. Reports the time per run of the program and
+ * the hit rate of each cache.
+ */
+public class MemoBench {
+    private static final String[] PROGRAMS = { "fib.skp", "ackermann.skp" };
+
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (String program : PROGRAMS) {
+            AST.Program p = reader.parse(Paths.get("bench/programs", program));
+            run(reader, p, program + ", no memo", 0, MemoCache.Eviction.LRU);
+            run(reader, p, program + ", memo", MemoCache.DEFAULT_CAPACITY, MemoCache.Eviction.LRU);
+            run(reader, p, program + ", memo 16 LRU", 16, MemoCache.Eviction.LRU);
+            run(reader, p, program + ", memo 16 FIFO", 16, MemoCache.Eviction.FIFO);
+        }
+    }
+
+    private static void run(Reader reader, AST.Program p, String name, int capacity, MemoCache.Eviction eviction) {
+        Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+        eval.setMemoization(capacity, eviction);
+        Bench.nsPerOp(name, 20, ops -> {
+            for (int i = 0; i < ops; i++)
+                eval.valueOf(p);
+            return ops;
+        });
+        eval.memoCaches().forEach((function, memo) -> System.out.println("  " + function + ": " + memo));
+    }
+}
@@ -0,0 +1,48 @@
+package skeptical.bench;
+
+import java.util.Random;
+
+import skeptical.Numbers;
+
+/**
+ * Number formatting: Double.toString against Numbers, producing a String
+ * and writing into a reused byte buffer as OutputSink does. Runs over loop
+ * counters (integers up to a million), money-like values with two
+ * decimals, and arbitrary doubles in [0, 1). Reports the time per number.
+ */
+public class NumberFormatBench {
+    private static final int N = 1 << 16;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        double[][] inputs = new double[3][N];
+        for (int i = 0; i < N; i++) {
+            inputs[0][i] = i * 15;
+            inputs[1][i] = random.nextInt(10_000_000) / 100.0;
+            inputs[2][i] = random.nextDouble();
+        }
+        String[] names = { "counters", "two decimals", "random [0, 1)" };
+        byte[] buf = new byte[Numbers.MAX_LENGTH];
+        for (int set = 0; set < inputs.length; set++) {
+            double[] in = inputs[set];
+            Bench.nsPerOp("Double.toString, " + names[set], N, ops -> {
+                long chars = 0;
+                for (int i = 0; i < ops; i++)
+                    chars += Double.toString(in[i]).length();
+                return chars;
+            });
+            Bench.nsPerOp("Numbers.toString, " + names[set], N, ops -> {
+                long chars = 0;
+                for (int i = 0; i < ops; i++)
+                    chars += Numbers.toString(in[i]).length();
+                return chars;
+            });
+            Bench.nsPerOp("Numbers.write, " + names[set], N, ops -> {
+                long chars = 0;
+                for (int i = 0; i < ops; i++)
+                    chars += Numbers.write(in[i], buf, 0);
+                return chars;
+            });
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package skeptical.bench;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import skeptical.Reader;
+import skeptical.parser.skepticalLexer;
+import skeptical.parser.skepticalParser;
+
+/**
+ * Parse throughput in lines per second, for a REPL-sized program and for
+ * a generated program of several thousand lines. "fresh" builds a new lexer,
+ * token stream and parser for each parse with plain LL prediction, the way
+ * Reader used to; "pooled" goes through Reader.parse, which reuses pooled
+ * instances and tries SLL prediction first.
+ */
+public class ParseBench {
+    private static final String SMALL =
+            "STATIC DIVISION.\nPROGRAM-ID. small.\nDYNAMIC DIVISION.\nDISPLAY 1 + 2 * 3.\n";
+    private static final int LARGE_LINES = 5000;
+
+    public static void main(String[] args) throws IOException {
+        String large = generate(LARGE_LINES);
+        Reader reader = new Reader();
+        for (String source : List.of(SMALL, large)) {
+            int lines = (int) source.lines().count();
+            boolean small = source == SMALL;
+            int ops = small ? 10000 : 5;
+            String size = small ? "small" : "large";
+            report(lines, Bench.nsPerOp("fresh  " + size + " (" + lines + " lines)", ops, n -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                    sum += fresh(source).hashCode();
+                return sum;
+            }));
+            report(lines, Bench.nsPerOp("pooled " + size + " (" + lines + " lines)", ops, n -> {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                    sum += reader.parse(source).hashCode();
+                return sum;
+            }));
+        }
+    }
+
+    private static Object fresh(String source) {
+        skepticalLexer lexer = new skepticalLexer(new ANTLRInputStream(source));
+        skepticalParser parser = new skepticalParser(new CommonTokenStream(lexer));
+        return parser.program().ast;
+    }
+
+    private static void report(int lines, double nsPerOp) {
+        System.out.printf("%-40s %12.0f lines/s%n", "", lines * 1e9 / nsPerOp);
+    }
+
+    /** A program of straight-line arithmetic, loops and function calls. */
+    private static String generate(int lines) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("STATIC DIVISION.\nPROGRAM-ID. large.\nFIX limit TO 10.\nDYNAMIC DIVISION.\n");
+        sb.append("FUNCTION square WITH x.\n\tSET y TO x * x.\nRETURN y.\n");
+        int n = 7;
+        for (int i = 0; n < lines; i++) {
+            switch (i % 3) {
+            case 0:
+                sb.append("SET a").append(i).append(" TO (").append(i).append(" + limit) * 2 - 1.\n");
+                n++;
+                break;
+            case 1:
+                sb.append("START k AS 1 TO limit DOING\n\tIF k > 5 THEN\n\t\tDISPLAY \"big \" + k.\n")
+                  .append("\tELSE\n\t\tDISPLAY k.\n");
+                n += 5;
+                break;
+            default:
+                sb.append("SET s TO CALL square WITH ").append(i).append(".\n");
+                n++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package skeptical.bench;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * Recursion one million calls deep: countdown.skp recurses in tail
+ * position and sum.skp does not. Times each in the default mode, where
+ * only tail calls run in constant stack, and in the explicit-stack mode.
+ * Reports the time per call, or the error a run ends with.
+ */
+public class RecursionBench {
+    private static final String[] PROGRAMS = { "countdown.skp", "sum.skp" };
+    private static final int DEPTH = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Reader reader = new Reader();
+        for (String program : PROGRAMS) {
+            AST.Program p = reader.parse(Paths.get("bench/programs", program));
+            for (boolean deep : new boolean[] { false, true }) {
+                Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+                eval.setExplicitStack(deep);
+                String name = program + (deep ? ", explicit stack" : ", Java stack");
+                try {
+                    eval.valueOf(p);
+                } catch (RuntimeException e) {
+                    System.out.println(name + ": " + e.getMessage());
+                    continue;
+                }
+                Bench.nsPerOp("call in " + name, DEPTH + 1, ops -> {
+                    eval.valueOf(p);
+                    return ops;
+                });
+            }
+        }
+    }
+}
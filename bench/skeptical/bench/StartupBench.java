@@ -0,0 +1,61 @@
+package skeptical.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time from launching the interpreter jar to its first DISPLAY line, with
+ * and without a class data sharing archive. Each launch types "run" for an
+ * example at the REPL and is timed until the line after the banner arrives;
+ * JVM teardown is not counted.
+ *
+ * Arguments: jar [archive [example]], as passed by "ant startup".
+ */
+public class StartupBench {
+    public static void main(String[] args) {
+        String jar = args[0];
+        String archive = args.length > 1 ? args[1] : null;
+        String example = args.length > 2 ? args[2] : "hello.skp";
+        Bench.nsPerOp("first DISPLAY, no archive", 1, ops -> launch(ops, jar, null, example));
+        if (archive != null && Files.exists(Paths.get(archive)))
+            Bench.nsPerOp("first DISPLAY, CDS archive", 1, ops -> launch(ops, jar, archive, example));
+        else
+            System.out.println("No CDS archive at " + archive + "; run \"ant cds\" first.");
+    }
+
+    private static long launch(int ops, String jar, String archive, String example) {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java));
+        if (archive != null)
+            command.addAll(List.of("-XX:SharedArchiveFile=" + archive, "-Xshare:auto"));
+        command.addAll(List.of("-jar", jar));
+        long chars = 0;
+        try {
+            for (int i = 0; i < ops; i++) {
+                Process p = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                try (OutputStream in = p.getOutputStream();
+                        BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                    in.write(("run " + example + "\n").getBytes());
+                    in.flush();
+                    out.readLine(); // the banner
+                    String first = out.readLine();
+                    if (first == null)
+                        throw new RuntimeException(String.join(" ", command) + " printed nothing");
+                    chars += first.length();
+                } finally {
+                    p.destroy();
+                    p.waitFor();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,50 @@
+package skeptical.bench;
+
+import java.lang.management.ManagementFactory;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Reader;
+
+/**
+ * Reports the time and the bytes allocated per iteration of Skeptical
+ * loops with arithmetic in the body, run by the tree-walking Evaluator, at
+ * the top level (globals) and inside a FUNCTION (locals). Allocation is
+ * read from the per-thread counter of the HotSpot ThreadMXBean, over one
+ * run after the timed ones, so the JIT has settled by then.
+ */
+public class ValueAllocBench {
+    private static final int ITERATIONS = 1_000_000;
+
+    private static final String[][] PROGRAMS = {
+        { "global, t + i * 2", "SET t TO 0.\nSTART i AS 1 TO " + ITERATIONS + " DOING\n"
+                + "\tSET t TO t + i * 2.\nDISPLAY t.\n" },
+        { "global, (t + i * 3) MOD 1000003", "SET t TO 0.\nSTART i AS 1 TO " + ITERATIONS + " DOING\n"
+                + "\tSET t TO (t + i * 3) MOD 1000003.\nDISPLAY t.\n" },
+        { "global, (t + i ** 2) MOD 1000003", "SET t TO 0.\nSTART i AS 1 TO " + ITERATIONS + " DOING\n"
+                + "\tSET t TO (t + i ** 2) MOD 1000003.\nDISPLAY t.\n" },
+        { "local, t + i * 2", "FUNCTION f WITH n.\n\tSET t TO 0.\n\tSTART i AS 1 TO n DOING\n"
+                + "\t\tSET t TO t + i * 2.\nRETURN t.\nDISPLAY CALL f WITH " + ITERATIONS + ".\n" },
+        { "local, (t + i * 3) MOD 1000003", "FUNCTION f WITH n.\n\tSET t TO 0.\n\tSTART i AS 1 TO n DOING\n"
+                + "\t\tSET t TO (t + i * 3) MOD 1000003.\nRETURN t.\nDISPLAY CALL f WITH " + ITERATIONS + ".\n" },
+    };
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        Reader reader = new Reader();
+        for (String[] program : PROGRAMS) {
+            AST.Program p = reader.parse("STATIC DIVISION.\nPROGRAM-ID. alloc.\nDYNAMIC DIVISION.\n" + program[1]);
+            Evaluator eval = new Evaluator(reader, EvaluatorBench.NULL_OUT);
+            Bench.nsPerOp(program[0], ITERATIONS, ops -> {
+                eval.valueOf(p);
+                return ops;
+            });
+            long before = mx.getThreadAllocatedBytes(tid);
+            eval.valueOf(p);
+            long bytes = mx.getThreadAllocatedBytes(tid) - before;
+            System.out.printf("%-40s %12.2f bytes/op%n", program[0], (double) bytes / ITERATIONS);
+        }
+    }
+}
@@ -4,6 +4,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 public interface AST {
+    /** Lexical address depth of a name that lives in the GlobalEnv. */
+    public static final int GLOBAL = -1;
+
+    /**
+     * A variable's lexical address, filled in by the Resolver: how many
+     * frames up the binding lives and its slot in that frame. A global has
+     * depth GLOBAL and no slot.
+     */
+    public static final class Address {
+        private int depth = GLOBAL;
+        private int slot = -1;
+
+        public void set(int depth, int slot) { this.depth = depth; this.slot = slot; }
+        public int depth() { return depth; }
+        public int slot() { return slot; }
+    }
+
+    /** A node that names a variable, and holds its Address. */
+    public interface Addressed {
+        Address address();
+        /** The variable's name, which keys it in the GlobalEnv. */
+        Symbol symbol();
+        default int depth() { return address().depth(); }
+        default int slot() { return address().slot(); }
+    }
+
     public static abstract class ASTNode implements AST {
         public abstract <T> T accept(Visitor<T> visitor, Env env);
     }
@@ -111,15 +137,16 @@ public interface AST {
     }
 
     public static class Const extends StaDecl {
-    	private final String id;      // For example, "LIMIT"
+    	private final Symbol id;      // For example, "LIMIT"
     	private final Exp value;      // For example, a ConstExp(5)
 
    	 public Const(String id, Exp value) {
-        	this.id = id;
+        	this.id = Symbol.of(id);
         	this.value = value;
     	}
 
-    	public String id() { return id; }
+    	public String id() { return id.name(); }
+    	public Symbol symbol() { return id; }
    	public Exp value() { return value; }
 
 
@@ -129,15 +156,24 @@ public interface AST {
      }
     public static abstract class Exp extends ASTNode {}
 
-    public static class IdExp extends Exp {
-    	private final String id;
+    public static class IdExp extends Exp implements Addressed {
+    	private final Symbol id;
+
+    	private final Address address = new Address();
+
+    	public Address address() { return address; }
+    	public Symbol symbol() { return id; }
 
     	public IdExp(String id) {
+        	this(Symbol.of(id)); // lets GlobalEnv match keys by reference
+    	}
+
+    	public IdExp(Symbol id) {
         	this.id = id;
     	}
 
     	public String id() {
-        	return id;
+        	return id.name();
     	}
 
     	public <T> T accept(Visitor<T> visitor, Env env) {
@@ -190,6 +226,7 @@ public interface AST {
     	public Exp right() { return right; }
      }
     
+     /** OR: the right operand is evaluated only if the left one is false. */
      public static class DisjExp extends BinaryExp {
     	public DisjExp(Exp left, Exp right) {
         	super(left, right);
@@ -199,6 +236,7 @@ public interface AST {
         	return visitor.visit(this, env);
     	}
      }
+    /** AND: the right operand is evaluated only if the left one is true. */
     public static class ConjExp extends BinaryExp {
     	public ConjExp(Exp left, Exp right) {
         	super(left, right);
@@ -209,56 +247,368 @@ public interface AST {
     	}
      }
 
-     public static class CompExp extends BinaryExp {
-    	private final String operator;
+    /**
+     * A binary operator resolved at parse time: each operator has its own
+     * node class (AddExp, LtExp, ...), made by the of() factories, so
+     * evaluating one never looks at the operator's spelling.
+     *
+     * A node also specializes itself on the operands it sees. It starts
+     * uninitialized; the first evaluation records whether both operands
+     * were numbers or both strings, and later evaluations of that kind take
+     * a fast path inlined into the node's apply(). When a guard fails, the
+     * node falls back to the generic operator in Operators and stays
+     * generic from then on. Every state gives the same results, so a node
+     * shared by runs on several threads can race on its state harmlessly.
+     *
+     * A node whose operands the TypeChecker has proven to be numbers is
+     * marked PROVEN, and skips the guards altogether; an evaluator may then
+     * apply it to unboxed operands with applyNumbers().
+     */
+    public static abstract class OperatorExp extends BinaryExp {
+        static final int UNINITIALIZED = 0, NUMBERS = 1, STRINGS = 2, GENERIC = 3, PROVEN = 4;
+
+        private final String operator;
+        int state = UNINITIALIZED; // written by specialize() and proveNumbers()
+
+        OperatorExp(Exp left, String operator, Exp right) {
+            super(left, right);
+            this.operator = operator;
+        }
 
-    	public CompExp(Exp left, String operator, Exp right) {
-        	super(left, right);
-        	this.operator = operator;
-    	}
+        /** The operator's source spelling, for the compilers. */
+        public String operator() { return operator; }
 
-    	public String operator() { return operator; }
+        /** Applies the operator to its evaluated operands. */
+        public abstract Value apply(Value left, Value right);
 
-    	public <T> T accept(Visitor<T> visitor, Env env) {
-        	return visitor.visit(this, env);
-    	}
-      }
+        /** The operator for operands of any type. */
+        abstract Value generic(Value left, Value right);
 
-     public static class SumExp extends BinaryExp {
-    	private final String operator;
+        /** Applies the operator to two numbers; a comparison yields 1 or 0. */
+        public abstract double applyNumbers(double left, double right);
 
-    	public SumExp(Exp left, String operator, Exp right) {
-        	super(left, right);
-        	this.operator = operator;
-    	}
+        /** Marks both operands as always numbers, so apply() need not check them. */
+        public void proveNumbers() {
+            state = PROVEN;
+        }
 
-    	public String operator() { return operator; }
+        /** Whether both operands are proven to be numbers. */
+        public boolean proven() {
+            return state == PROVEN;
+        }
 
-    	public <T> T accept(Visitor<T> visitor, Env env) {
-        	return visitor.visit(this, env);
-    	}
+        /** The slow path of apply(): widens the node's state to cover these operands. */
+        final Value specialize(Value left, Value right) {
+            if (state < GENERIC) {
+                int seen = left.isNumber() != right.isNumber() ? GENERIC : left.isNumber() ? NUMBERS : STRINGS;
+                state = state == UNINITIALIZED || state == seen ? seen : GENERIC;
+            }
+            return generic(left, right);
+        }
     }
 
-    public static class TermExp extends BinaryExp {
-	    String operator;
+    public static abstract class CompExp extends OperatorExp {
+        CompExp(Exp left, String operator, Exp right) {
+            super(left, operator, right);
+        }
 
-    	public TermExp(Exp left, String operator, Exp right) {
-        	super(left, right);
-        	this.operator = operator;
-    	}
+        /** Makes the node for a comparison operator given by its source spelling. */
+        public static CompExp of(Exp left, String operator, Exp right) {
+            switch (operator) {
+            case "==":
+                return new EqExp(left, right);
+            case "!=":
+                return new NeExp(left, right);
+            case "<":
+                return new LtExp(left, right);
+            case "<=":
+                return new LeExp(left, right);
+            case ">":
+                return new GtExp(left, right);
+            case ">=":
+                return new GeExp(left, right);
+            default:
+                throw new RuntimeException("Unknown operator: " + operator);
+            }
+        }
 
-    	public String operator() { return operator; }
+        public final Value apply(Value left, Value right) {
+            return Operators.truth(test(left, right));
+        }
 
-    	public <T> T accept(Visitor<T> visitor, Env env) {
-        	return visitor.visit(this, env);
-    	}
-     }
+        /** Applies the comparison to a Java boolean, for conditions. */
+        public abstract boolean test(Value left, Value right);
+
+        /** Compares two numbers. */
+        public abstract boolean testNumbers(double left, double right);
+
+        public final double applyNumbers(double left, double right) {
+            return testNumbers(left, right) ? 1 : 0;
+        }
+
+        public <T> T accept(Visitor<T> visitor, Env env) {
+            return visitor.visit(this, env);
+        }
+    }
+
+    public static final class EqExp extends CompExp {
+        public EqExp(Exp left, Exp right) { super(left, "==", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return left.asString().equals(right.asString());
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) == 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.eq(left, right); }
+    }
+
+    public static final class NeExp extends CompExp {
+        public NeExp(Exp left, Exp right) { super(left, "!=", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return !left.asString().equals(right.asString());
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) != 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.ne(left, right); }
+    }
+
+    public static final class LtExp extends CompExp {
+        public LtExp(Exp left, Exp right) { super(left, "<", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return left.asString().compareTo(right.asString()) < 0;
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) < 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.lt(left, right); }
+    }
+
+    public static final class LeExp extends CompExp {
+        public LeExp(Exp left, Exp right) { super(left, "<=", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return left.asString().compareTo(right.asString()) <= 0;
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) <= 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.le(left, right); }
+    }
+
+    public static final class GtExp extends CompExp {
+        public GtExp(Exp left, Exp right) { super(left, ">", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return left.asString().compareTo(right.asString()) > 0;
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) > 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.gt(left, right); }
+    }
+
+    public static final class GeExp extends CompExp {
+        public GeExp(Exp left, Exp right) { super(left, ">=", right); }
+
+        public boolean test(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return testNumbers(left.uncheckedNumber(), right.uncheckedNumber());
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return left.asString().compareTo(right.asString()) >= 0;
+            return Operators.isTrue(specialize(left, right));
+        }
+
+        public boolean testNumbers(double left, double right) {
+            return Double.compare(left, right) >= 0;
+        }
+
+        Value generic(Value left, Value right) { return Operators.ge(left, right); }
+    }
+
+    public static abstract class SumExp extends OperatorExp {
+        SumExp(Exp left, String operator, Exp right) {
+            super(left, operator, right);
+        }
+
+        /** Makes the node for + or -. */
+        public static SumExp of(Exp left, String operator, Exp right) {
+            switch (operator) {
+            case "+":
+                return new AddExp(left, right);
+            case "-":
+                return new SubExp(left, right);
+            default:
+                throw new RuntimeException("Unknown operator: " + operator);
+            }
+        }
+
+        public <T> T accept(Visitor<T> visitor, Env env) {
+            return visitor.visit(this, env);
+        }
+    }
 
-    public static class PowExp extends BinaryExp {
+    /** Addition of numbers, concatenation of strings (or of a string and a number). */
+    public static final class AddExp extends SumExp {
+        public AddExp(Exp left, Exp right) { super(left, "+", right); }
+
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            if (state == STRINGS && !left.isNumber() && !right.isNumber())
+                return Value.concat(left, right);
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            return left + right;
+        }
+
+        Value generic(Value left, Value right) { return Operators.add(left, right); }
+    }
+
+    public static final class SubExp extends SumExp {
+        public SubExp(Exp left, Exp right) { super(left, "-", right); }
+
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            return left - right;
+        }
+
+        Value generic(Value left, Value right) { return Operators.sub(left, right); }
+    }
+
+    public static abstract class TermExp extends OperatorExp {
+        TermExp(Exp left, String operator, Exp right) {
+            super(left, operator, right);
+        }
+
+        /** Makes the node for *, / or MOD. */
+        public static TermExp of(Exp left, String operator, Exp right) {
+            switch (operator) {
+            case "*":
+                return new MulExp(left, right);
+            case "/":
+                return new DivExp(left, right);
+            case "MOD":
+                return new ModExp(left, right);
+            default:
+                throw new RuntimeException("Unknown operator: " + operator);
+            }
+        }
+
+        public <T> T accept(Visitor<T> visitor, Env env) {
+            return visitor.visit(this, env);
+        }
+    }
+
+    public static final class MulExp extends TermExp {
+        public MulExp(Exp left, Exp right) { super(left, "*", right); }
+
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            return left * right;
+        }
+
+        Value generic(Value left, Value right) { return Operators.mul(left, right); }
+    }
+
+    public static final class DivExp extends TermExp {
+        public DivExp(Exp left, Exp right) { super(left, "/", right); }
+
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            if (right == 0)
+                throw new RuntimeException("Division by zero");
+            return left / right;
+        }
+
+        Value generic(Value left, Value right) { return Operators.div(left, right); }
+    }
+
+    public static final class ModExp extends TermExp {
+        public ModExp(Exp left, Exp right) { super(left, "MOD", right); }
+
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            if (right == 0)
+                throw new RuntimeException("Division by zero");
+            return Operators.remainder(left, right);
+        }
+
+        Value generic(Value left, Value right) { return Operators.mod(left, right); }
+    }
+
+    public static class PowExp extends OperatorExp {
     	public PowExp(Exp left, Exp right) {
-        	super(left, right);
+        	super(left, "**", right);
     	}
 
+        public Value apply(Value left, Value right) {
+            if (state == PROVEN || state == NUMBERS && left.isNumber() && right.isNumber())
+                return Value.of(applyNumbers(left.uncheckedNumber(), right.uncheckedNumber()));
+            return specialize(left, right);
+        }
+
+        public double applyNumbers(double left, double right) {
+            return Math.pow(left, right);
+        }
+
+        Value generic(Value left, Value right) { return Operators.pow(left, right); }
+
     	public <T> T accept(Visitor<T> visitor, Env env) {
         	return visitor.visit(this, env);
     	}
@@ -322,20 +672,50 @@ public interface AST {
 
 
 
+    /**
+     * A CALL used as an expression, e.g. SET r TO CALL fib WITH n - 1.
+     * Evaluates to the function's RETURN value.
+     */
+    public static class CallExp extends Exp {
+    	private final CallStmt call;
+
+    	public CallExp(CallStmt call) {
+        	this.call = call;
+    	}
+
+    	public CallStmt getCall() { return call; }
+
+    	public <T> T accept(Visitor<T> visitor, Env env) {
+        	return visitor.visit(this, env);
+    	}
+    }
+
     public static abstract class Statement extends ASTNode {}
 
-    public static class Assign extends Statement { 
-    	private String identifier;
+    public static class Assign extends Statement implements Addressed {
+    	private Symbol identifier;
     	private Exp expression;
     	private String type; // Optional
 
+    	private final Address address = new Address();
+    	private CallStmt tailCall; // set by the Resolver if this SET returns a call's result
+    	private boolean inLoop; // set by the Resolver if a START of the same body encloses this SET
+
+    	public Address address() { return address; }
+
+    	public void setTailCall(CallStmt tailCall) { this.tailCall = tailCall; }
+    	public CallStmt getTailCall() { return tailCall; }
+    	public void setInLoop(boolean inLoop) { this.inLoop = inLoop; }
+    	public boolean inLoop() { return inLoop; }
+    	public Symbol symbol() { return identifier; }
+
     	public Assign() { }
 
-    	public void setIdentifier(String identifier) { this.identifier = identifier; }
+    	public void setIdentifier(String identifier) { this.identifier = Symbol.of(identifier); }
     	public void setExpression(Exp expression) { this.expression = expression; }
     	public void setType(String type) { this.type = type; }
 
-    	public String getIdentifier() { return identifier; }
+    	public String getIdentifier() { return identifier.name(); }
     	public Exp getExpression() { return expression; }
     	public String getType() { return type; }
 
@@ -347,13 +727,13 @@ public interface AST {
 
 	
      public static class Print extends Statement {
-    	private String output; // could be a string literal or identifier
+    	private Exp output; // a string literal, identifier or any other expression
 
-    	public Print(String output) {
+    	public Print(Exp output) {
         	this.output = output;
     	}
 
-    	public String getOutput() { return output; }
+    	public Exp getOutput() { return output; }
 
     	public <T> T accept(Visitor<T> visitor, Env env) {
         	return visitor.visit(this, env);
@@ -361,16 +741,25 @@ public interface AST {
      }
 
 	
-     public static class Input extends Statement {
-    	private String identifier;
+     public static class Input extends Statement implements Addressed {
+    	private Symbol identifier;
     	private String prompt;
 
+    	private final Address address = new Address();
+
+    	public Address address() { return address; }
+    	public Symbol symbol() { return identifier; }
+
    	 public Input(String identifier, String prompt) {
+        	this(Symbol.of(identifier), prompt);
+    	}
+
+   	 public Input(Symbol identifier, String prompt) {
         	this.identifier = identifier;
         	this.prompt = prompt;
     	}
 
-    	public String getIdentifier() { return identifier; }
+    	public String getIdentifier() { return identifier.name(); }
     	public String getPrompt() { return prompt; }
 
     	public <T> T accept(Visitor<T> visitor, Env env) {
@@ -400,22 +789,34 @@ public interface AST {
       }
 
 	
-      public static class LoopStmt extends Statement {
-   	 	private String identifier;
-    	private int startValue;
-   	 	private int endValue;
+      public static class LoopStmt extends Statement implements Addressed {
+   	 	private Symbol identifier;
+    	private Exp start;
+   	 	private Exp end;
    	 	private List<Statement> body;
 
-   	 	public LoopStmt(String identifier, int startValue, int endValue, List<Statement> body) {
-         	this.identifier = identifier;
-         	this.startValue = startValue;
-         	this.endValue = endValue;
+    	private final Address address = new Address();
+    	// What the body may do to the loop variable; set by the Resolver.
+    	private boolean bodyReads = true;
+    	private boolean bodyWrites = true;
+
+    	public Address address() { return address; }
+    	public Symbol symbol() { return identifier; }
+
+    	public void setBodyAccess(boolean reads, boolean writes) { bodyReads = reads; bodyWrites = writes; }
+    	public boolean bodyReadsVariable() { return bodyReads; }
+    	public boolean bodyWritesVariable() { return bodyWrites; }
+
+   	 	public LoopStmt(String identifier, Exp start, Exp end, List<Statement> body) {
+         	this.identifier = Symbol.of(identifier);
+         	this.start = start;
+         	this.end = end;
          	this.body = body;
     	 }
 
-   	 	public String getIdentifier() { return identifier; }
-   	 	public int getStartValue() { return startValue; }
-   	 	public int getEndValue() { return endValue; }
+   	 	public String getIdentifier() { return identifier.name(); }
+   	 	public Exp getStart() { return start; }
+   	 	public Exp getEnd() { return end; }
    	 	public List<Statement> getBody() { return body; }
 
    	 	public <T> T accept(Visitor<T> visitor, Env env) {
@@ -424,39 +825,79 @@ public interface AST {
 	    }
 	
     public static class CallStmt extends Statement {
-    	private String identifier;
+    	private Symbol identifier;
     	private List<Exp> arguments; // can be empty if no arguments
+    	private int function = -1; // index in the function table, set by the Resolver
 
    	   	public CallStmt(String identifier, List<Exp> arguments) {
+        this(Symbol.of(identifier), arguments);
+}
+
+   	   	public CallStmt(Symbol identifier, List<Exp> arguments) {
         this.identifier = identifier;
         this.arguments = arguments;
 }
 
-   	    public String getIdentifier() { return identifier; }
+   	    public String getIdentifier() { return identifier.name(); }
+   	    public Symbol symbol() { return identifier; }
    	    public List<Exp> getArguments() { return arguments; }
 
+   	    public void setFunctionIndex(int function) { this.function = function; }
+   	    public int getFunctionIndex() { return function; }
+
    	   	public <T> T accept(Visitor<T> visitor, Env env) {
         	return visitor.visit(this, env);
     	}
     }
 
     public static class FuncDef extends Statement {
-    	private String name;
- 	    private List<String> parameters;
+    	private Symbol name;
+ 	    private List<Symbol> parameters;
  	    private List<Statement> body;
- 	    private String returnIdentifier;
+ 	    private Symbol returnIdentifier;
+ 	    private Symbol[] frameNames = new Symbol[0]; // slot -> name, set by the Resolver
+ 	    private int index = -1; // index in the function table, set by the Resolver
+ 	    private final Address returnAddress = new Address();
+ 	    private boolean pure; // set by the Resolver
+ 	    private boolean loops; // set by the Resolver: a START in this body, not a nested function's
 
  	   public FuncDef(String name, List<String> parameters, List<Statement> body, String returnIdentifier) {
+        	this.name = Symbol.of(name);
+        	this.parameters = new ArrayList<>(parameters.size());
+        	for (String p : parameters)
+        		this.parameters.add(Symbol.of(p));
+        	this.body = body;
+        	this.returnIdentifier = Symbol.of(returnIdentifier);
+ 	   }
+
+ 	   public FuncDef(Symbol name, List<Symbol> parameters, List<Statement> body, Symbol returnIdentifier) {
         	this.name = name;
         	this.parameters = parameters;
         	this.body = body;
         	this.returnIdentifier = returnIdentifier;
  	   }
 
- 	   public String getName() { return name; }
- 	   public List<String> getParameters() { return parameters; }
+ 	   public String getName() { return name.name(); }
+ 	   public Symbol symbol() { return name; }
+ 	   public List<Symbol> getParameters() { return parameters; }
  	   public List<Statement> getBody() { return body; }
- 	   public String getReturnIdentifier() { return returnIdentifier; }
+ 	   public String getReturnIdentifier() { return returnIdentifier.name(); }
+ 	   public Symbol getReturnSymbol() { return returnIdentifier; }
+
+ 	   public void setFrameNames(Symbol[] frameNames) { this.frameNames = frameNames; }
+ 	   public Symbol[] getFrameNames() { return frameNames; }
+ 	   public int getFrameSize() { return frameNames.length; }
+
+ 	   public void setFunctionIndex(int index) { this.index = index; }
+ 	   public int getFunctionIndex() { return index; }
+
+ 	   public Address getReturnAddress() { return returnAddress; }
+
+ 	   public void setPure(boolean pure) { this.pure = pure; }
+ 	   public boolean isPure() { return pure; }
+
+ 	   public void setHasLoops(boolean loops) { this.loops = loops; }
+ 	   public boolean hasLoops() { return loops; }
 
  	   public <T> T accept(Visitor<T> visitor, Env env) {
         	return visitor.visit(this, env);
@@ -464,20 +905,25 @@ public interface AST {
     }
 
 
-    public static class Rand extends Statement {
- 	   private String identifier;
- 	   private int min;
- 	   private int max;
+    public static class Rand extends Statement implements Addressed {
+ 	   private Symbol identifier;
+ 	   private Exp min;
+ 	   private Exp max;
 
- 	   public Rand(String identifier, int min, int max) {
-        	this.identifier = identifier;
+    	private final Address address = new Address();
+
+    	public Address address() { return address; }
+    	public Symbol symbol() { return identifier; }
+
+ 	   public Rand(String identifier, Exp min, Exp max) {
+        	this.identifier = Symbol.of(identifier);
         	this.min = min;
         	this.max = max;
  	   }
 
-  	  public String getIdentifier() { return identifier; }
- 	   public int getMin() { return min; }
- 	   public int getMax() { return max; }
+  	  public String getIdentifier() { return identifier.name(); }
+ 	   public Exp getMin() { return min; }
+ 	   public Exp getMax() { return max; }
 
  	   public <T> T accept(Visitor<T> visitor, Env env) {
      		return visitor.visit(this, env);
@@ -506,6 +952,7 @@ public interface AST {
 		T visit(AST.FactorExp e, Env env);
    		T visit(AST.GroupExp e, Env env);
     	T visit(AST.UnaryOpExp e, Env env);
+    	T visit(AST.CallExp e, Env env);
 		T visit(AST.Assign dd, Env env);
 		T visit(AST.Print dd, Env env);
 		T visit(AST.Input dd, Env env);
@@ -0,0 +1,271 @@
+package skeptical;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless mode: runs a list of script files, or every .skp file in a
+ * directory, without the REPL's banner and prompts. Scripts run
+ * concurrently on a fixed pool of threads. Each run gets its own
+ * Evaluator (and so its own GlobalEnv) and writes into its own buffer.
+ * Outputs are printed in the order the scripts were given, each with its
+ * wall time, followed by the aggregate throughput.
+ *
+ * PROMPT reads from an empty input in this mode, so a script that asks for
+ * input fails with an error rather than blocking.
+ *
+ * Usage: Interpreter --batch [--compile|--ir|--deep] [--memo[=N]] [--memo-fifo]
+ *                           [--output directory] [--threads N] [file|directory]...
+ * With --memo, each script's output ends with the hit rates of its memo
+ * caches. With --output, what each script DISPLAYs is written to
+ * directory/name.out instead, through a FileChannel, and only errors are
+ * printed with the script.
+ * Paths that do not exist as given are looked up in the examples directory;
+ * with no paths, every example is run.
+ */
+public class BatchRunner {
+
+    /** What runs a program once it is parsed and optimized. */
+    public enum Engine {
+        /** The tree-walking Evaluator. */
+        EVALUATOR,
+        /** JVM bytecode from the Compiler. */
+        COMPILER,
+        /** The Lowerer's register instructions, run by IrProgram. */
+        IR
+    }
+
+    /** The outcome of running one script. */
+    static final class Result {
+        final Path script;
+        final String output;
+        final long nanos;
+        final boolean failed;
+
+        Result(Path script, String output, long nanos, boolean failed) {
+            this.script = script;
+            this.output = output;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+    }
+
+    private final Engine engine;
+    private final int threads;
+    private boolean deep;
+    private int memoCapacity;
+    private MemoCache.Eviction memoEviction = MemoCache.Eviction.LRU;
+    private Path outputDirectory; // null to capture DISPLAY with the rest of the output
+
+    public BatchRunner(Engine engine, int threads) {
+        this.engine = engine;
+        this.threads = threads;
+    }
+
+    /** Runs scripts on the Evaluator's explicit stack; see Evaluator.setExplicitStack. */
+    public void setExplicitStack(boolean deep) {
+        this.deep = deep;
+    }
+
+    /** Memoizes pure functions in every script; see Evaluator.setMemoization. */
+    public void setMemoization(int capacity, MemoCache.Eviction eviction) {
+        this.memoCapacity = capacity;
+        this.memoEviction = eviction;
+    }
+
+    /** Writes each script's DISPLAY output to a file named after it in directory. */
+    public void setOutputDirectory(Path directory) {
+        this.outputDirectory = directory;
+    }
+
+    /** Runs the batch described by the command line; returns the process exit status. */
+    public static int main(String[] args) {
+        Engine engine = Engine.EVALUATOR;
+        boolean deep = false;
+        int memo = 0;
+        MemoCache.Eviction eviction = MemoCache.Eviction.LRU;
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--compile"))
+                engine = Engine.COMPILER;
+            else if (args[i].equals("--ir"))
+                engine = Engine.IR;
+            else if (args[i].equals("--deep"))
+                deep = true;
+            else if (MemoCache.capacityOption(args[i]) >= 0)
+                memo = MemoCache.capacityOption(args[i]);
+            else if (args[i].equals("--memo-fifo"))
+                eviction = MemoCache.Eviction.FIFO;
+            else if (args[i].equals("--output") && i + 1 < args.length)
+                output = Paths.get(args[++i]);
+            else if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else
+                paths.add(args[i]);
+        }
+        try {
+            List<Path> scripts = scripts(paths);
+            if (scripts.isEmpty()) {
+                System.err.println("No scripts to run.");
+                return 2;
+            }
+            BatchRunner runner = new BatchRunner(deep ? Engine.EVALUATOR : engine, threads);
+            runner.setExplicitStack(deep);
+            runner.setMemoization(memo, eviction);
+            if (output != null) {
+                Files.createDirectories(output);
+                runner.setOutputDirectory(output);
+            }
+            return runner.run(scripts, System.out) ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Error reading input:" + e.getMessage());
+            return 2;
+        }
+    }
+
+    /** Expands the command-line paths into script files, directories into their .skp files. */
+    static List<Path> scripts(List<String> args) throws IOException {
+        Path examples = Paths.get(new Reader().getProgramDirectory());
+        if (args.isEmpty())
+            args = List.of(examples.toString());
+        List<Path> scripts = new ArrayList<>();
+        for (String arg : args) {
+            Path p = Paths.get(arg);
+            if (!Files.exists(p))
+                p = examples.resolve(arg);
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> files = Files.list(p)) {
+                    scripts.addAll(files.filter(f -> f.toString().endsWith(".skp")).sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                scripts.add(p);
+            }
+        }
+        return scripts;
+    }
+
+    /** Runs the scripts, prints their outputs and a summary, and returns true if none failed. */
+    public boolean run(List<Path> scripts, PrintStream out) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, scripts.size())));
+        long start = System.nanoTime();
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path script : scripts)
+            futures.add(pool.submit(() -> run(script)));
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> f : futures)
+                results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch interrupted");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long wall = System.nanoTime() - start;
+
+        long total = 0;
+        int failed = 0;
+        for (Result r : results) {
+            out.printf("==> %s (%.1f ms%s)%n", r.script, r.nanos / 1e6, r.failed ? ", failed" : "");
+            out.print(r.output);
+            total += r.nanos;
+            if (r.failed)
+                failed++;
+        }
+        out.printf("Ran %d script(s), %d failed, in %.1f ms on %d thread(s): %.1f scripts/s"
+                + " (%.1f ms of script time)%n", results.size(), failed, wall / 1e6,
+                Math.min(threads, scripts.size()), results.size() * 1e9 / wall, total / 1e6);
+        out.flush();
+        return failed == 0;
+    }
+
+    /** Runs one script the way the REPL would, capturing everything it prints. */
+    Result run(Path script) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer);
+        Reader reader = new Reader(new BufferedReader(new StringReader("")), out);
+        Printer printer = new Printer(out);
+        Evaluator eval = null;
+        boolean failed = false;
+        long start = System.nanoTime();
+        try {
+            eval = new Evaluator(reader, sink(script, out));
+            eval.setExplicitStack(deep);
+            eval.setMemoization(memoCapacity, memoEviction);
+            printer.print(execute(reader.parse(script), eval, reader, out, engine));
+        } catch (IOException e) {
+            out.println("Error reading input:" + e.getMessage());
+            failed = true;
+        } catch (RuntimeException e) {
+            printer.print(e);
+            failed = true;
+        } finally {
+            if (eval != null && outputDirectory != null) {
+                try {
+                    eval.output().close();
+                } catch (RuntimeException e) {
+                    printer.print(e);
+                    failed = true;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (eval != null)
+            eval.memoCaches().forEach((name, memo) -> out.println("memo " + name + ": " + memo));
+        out.flush();
+        return new Result(script, buffer.toString(), nanos, failed);
+    }
+
+    /** Where a script's DISPLAY output goes: its file in the output directory, or out. */
+    private OutputSink sink(Path script, PrintStream out) throws IOException {
+        if (outputDirectory == null)
+            return OutputSink.of(out);
+        String name = script.getFileName().toString().replaceFirst("\\.skp$", "") + ".out";
+        return new OutputSink(FileChannel.open(outputDirectory.resolve(name),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Optimizes and runs a program with eval, or with another engine if the
+     * program is supported by it. Everything the program prints, including
+     * a fallback notice, goes to out.
+     */
+    static Value execute(AST.Program p, Evaluator eval, Reader reader, PrintStream out, Engine engine) {
+        p = new Optimizer().optimize(p);
+        try {
+            switch (engine) {
+            case COMPILER:
+                return new Compiler().compile(p).execute(reader, eval.output());
+            case IR:
+                return new Lowerer().lower(p).execute(reader, eval.output());
+            default:
+                break;
+            }
+        } catch (UnsupportedOperationException e) {
+            out.println("Not " + (engine == Engine.IR ? "lowered" : "compiled")
+                    + " (" + e.getMessage() + "), interpreting instead.");
+        }
+        return eval.valueOf(p);
+    }
+}
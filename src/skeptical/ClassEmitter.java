@@ -0,0 +1,344 @@
+package skeptical;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JVM class file writer, just large enough for the Compiler.
+ *
+ * Classes are written as version 49 (Java 5), which the JVM verifies by
+ * type inference, so no StackMapTable frames need to be computed. The
+ * operand stack depth is tracked per instruction to size max_stack; callers
+ * make every jump leave the stack as deep as it is where the jump's target
+ * is marked, which makes that tracking exact.
+ */
+final class ClassEmitter {
+    static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    // Opcodes used by the Compiler.
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, ILOAD = 0x15, ALOAD = 0x19, AALOAD = 0x32, ISTORE = 0x36,
+            ASTORE = 0x3a, POP = 0x57, DUP = 0x59, SWAP = 0x5f, IADD = 0x60, I2D = 0x87,
+            IINC = 0x84, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d,
+            IFLE = 0x9e, IF_ICMPEQ = 0x9f, IF_ICMPGT = 0xa3, GOTO = 0xa7,
+            IRETURN = 0xac, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1,
+            GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7,
+            INVOKESTATIC = 0xb8, ATHROW = 0xbf;
+
+    private final String name;
+    private final String superName;
+    private final List<byte[]> pool = new ArrayList<>();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<Method> methods = new ArrayList<>();
+
+    ClassEmitter(String name, String superName) {
+        this.name = name;
+        this.superName = superName;
+    }
+
+    String name() {
+        return name;
+    }
+
+    // ---- constant pool ----
+
+    private int constant(String key, int slots, byte[] entry) {
+        Integer i = poolIndex.get(key);
+        if (i != null)
+            return i;
+        int index = poolCount;
+        pool.add(entry);
+        poolIndex.put(key, index);
+        poolCount += slots;
+        return index;
+    }
+
+    private static byte[] entry(int tag, Object... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(tag);
+            for (Object p : parts) {
+                if (p instanceof String s)
+                    out.writeUTF(s);
+                else if (p instanceof Short s)
+                    out.writeShort(s);
+                else if (p instanceof Integer n)
+                    out.writeInt(n);
+                else if (p instanceof Double d)
+                    out.writeDouble(d);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(String s) {
+        return constant("U" + s, 1, entry(1, s));
+    }
+
+    int integer(int n) {
+        return constant("I" + n, 1, entry(3, n));
+    }
+
+    int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return constant("C" + internalName, 1, entry(7, (short) nameIndex));
+    }
+
+    int string(String s) {
+        int index = utf8(s);
+        return constant("S" + s, 1, entry(8, (short) index));
+    }
+
+    private int nameAndType(String name, String desc) {
+        int n = utf8(name), d = utf8(desc);
+        return constant("N" + name + ":" + desc, 1, entry(12, (short) n, (short) d));
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        int c = classRef(owner), nt = nameAndType(name, desc);
+        return constant("F" + owner + "." + name + ":" + desc, 1, entry(9, (short) c, (short) nt));
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        int c = classRef(owner), nt = nameAndType(name, desc);
+        return constant("M" + owner + "." + name + ":" + desc, 1, entry(10, (short) c, (short) nt));
+    }
+
+    // ---- methods ----
+
+    Method method(int access, String name, String desc, int argSlots) {
+        Method m = new Method(access, name, desc, argSlots);
+        methods.add(m);
+        return m;
+    }
+
+    /** A jump target within a method. */
+    static final class Label {
+        int offset = -1;
+        final List<Integer> fixups = new ArrayList<>();
+    }
+
+    final class Method {
+        private final int access;
+        private final String name;
+        private final String desc;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack, maxStack, maxLocals;
+        private final List<Label> labels = new ArrayList<>();
+
+        Method(int access, String name, String desc, int argSlots) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.maxLocals = argSlots;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack)
+                maxStack = stack;
+        }
+
+        private void u1(int b) {
+            code.write(b);
+        }
+
+        private void u2(int v) {
+            code.write(v >>> 8);
+            code.write(v);
+        }
+
+        int size() {
+            return code.size();
+        }
+
+        /** Emits an instruction without operands that moves the stack by delta. */
+        Method op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+            return this;
+        }
+
+        Method iconst(int n) {
+            if (n >= -1 && n <= 5)
+                op(ICONST_0 + n, 1);
+            else if (n >= Byte.MIN_VALUE && n <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(n);
+                adjust(1);
+            } else if (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(n);
+                adjust(1);
+            } else {
+                u1(LDC_W);
+                u2(integer(n));
+                adjust(1);
+            }
+            return this;
+        }
+
+        Method ldcString(String s) {
+            if (s == null)
+                return op(ACONST_NULL, 1);
+            u1(LDC_W);
+            u2(string(s));
+            adjust(1);
+            return this;
+        }
+
+        Method local(int opcode, int slot) {
+            if (slot > 255)
+                throw new UnsupportedOperationException("too many local variables");
+            u1(opcode);
+            u1(slot);
+            maxLocals = Math.max(maxLocals, slot + 1);
+            adjust(opcode == ILOAD || opcode == ALOAD ? 1 : -1);
+            return this;
+        }
+
+        Method iinc(int slot, int by) {
+            u1(IINC);
+            u1(slot);
+            u1(by);
+            return this;
+        }
+
+        Method field(int opcode, String owner, String name, String desc) {
+            u1(opcode);
+            u2(fieldRef(owner, name, desc));
+            adjust(opcode == GETFIELD ? 0 : -2);
+            return this;
+        }
+
+        Method invoke(int opcode, String owner, String name, String desc) {
+            u1(opcode);
+            u2(methodRef(owner, name, desc));
+            adjust(stackEffect(desc) - (opcode == INVOKESTATIC ? 0 : 1));
+            return this;
+        }
+
+        Label label() {
+            Label l = new Label();
+            labels.add(l);
+            return l;
+        }
+
+        Method mark(Label l) {
+            l.offset = code.size();
+            return this;
+        }
+
+        /** Emits a branch; conditional branches pop their operands from the stack. */
+        Method jump(int opcode, Label target) {
+            int at = code.size();
+            u1(opcode);
+            target.fixups.add(at);
+            u2(0);
+            if (opcode >= IFEQ && opcode <= IFLE)
+                adjust(-1);
+            else if (opcode >= IF_ICMPEQ && opcode <= IF_ICMPGT)
+                adjust(-2);
+            return this;
+        }
+
+        private byte[] bytes() {
+            byte[] b = code.toByteArray();
+            for (Label l : labels) {
+                for (int at : l.fixups) {
+                    int rel = l.offset - at;
+                    if (rel < Short.MIN_VALUE || rel > Short.MAX_VALUE)
+                        throw new UnsupportedOperationException("method too large");
+                    b[at + 1] = (byte) (rel >>> 8);
+                    b[at + 2] = (byte) rel;
+                }
+            }
+            if (b.length > 65535)
+                throw new UnsupportedOperationException("method too large");
+            return b;
+        }
+    }
+
+    /** Returns the stack change of calling a method with this descriptor, receiver excluded. */
+    static int stackEffect(String desc) {
+        int slots = 0;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            char c = desc.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+            } else {
+                while (desc.charAt(i) == '[')
+                    i++;
+                i = desc.charAt(i) == 'L' ? desc.indexOf(';', i) + 1 : i + 1;
+                slots++;
+            }
+        }
+        char ret = desc.charAt(i + 1);
+        int result = ret == 'V' ? 0 : (ret == 'J' || ret == 'D') ? 2 : 1;
+        return result - slots;
+    }
+
+    byte[] toBytes() {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int codeIndex = utf8("Code");
+        List<byte[]> methodBytes = new ArrayList<>();
+        for (Method m : methods) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                byte[] code = m.bytes();
+                out.writeShort(m.access);
+                out.writeShort(utf8(m.name));
+                out.writeShort(utf8(m.desc));
+                out.writeShort(1); // attributes: Code
+                out.writeShort(codeIndex);
+                out.writeInt(12 + code.length);
+                out.writeShort(m.maxStack);
+                out.writeShort(m.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methodBytes.add(bytes.toByteArray());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            if (poolCount > 65535)
+                throw new UnsupportedOperationException("constant pool too large");
+            out.writeShort(poolCount);
+            for (byte[] e : pool)
+                out.write(e);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methodBytes.size());
+            for (byte[] m : methodBytes)
+                out.write(m);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,98 @@
+package skeptical;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Thin client for the interpreter Daemon. It sends one "run" request,
+ * forwards its standard input for PROMPT, and copies the program's output
+ * to standard output until the daemon closes the connection. It uses no
+ * interpreter or ANTLR classes, so it starts as fast as the JVM allows.
+ *
+ * Usage: Client [--socket path] file
+ * A file that exists relative to the current directory is sent as an
+ * absolute path; any other name is looked up by the daemon in its
+ * examples directory, as "run" does at the REPL.
+ */
+public final class Client {
+
+    private Client() { }
+
+    /** The socket the daemon listens on unless told otherwise. */
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+                "skeptical-" + System.getProperty("user.name") + ".sock");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = defaultSocket();
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length)
+                socket = Paths.get(args[++i]);
+            else
+                file = args[i];
+        }
+        if (file == null) {
+            System.err.println("Usage: Client [--socket path] file");
+            System.exit(2);
+        }
+        Path local = Paths.get(file);
+        if (Files.exists(local))
+            file = local.toAbsolutePath().toString();
+        run(socket, file, System.in, System.out);
+        System.out.flush();
+    }
+
+    /**
+     * Asks the daemon at socket to run a file, feeding it input and copying
+     * what the program prints to out. Returns when the run is over.
+     */
+    public static void run(Path socket, String file, InputStream input, OutputStream out) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            channel.write(ByteBuffer.wrap(("run " + file + "\n").getBytes(Charset.defaultCharset())));
+            // Reads and writes go to the channel directly rather than through
+            // Channels.newInputStream/newOutputStream, which would serialize
+            // the blocked read against the input forwarder's writes.
+            Thread forwarder = new Thread(() -> forward(input, channel), "skeptical-client-input");
+            forwarder.setDaemon(true);
+            forwarder.start();
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+            try {
+                while (channel.read(buf) >= 0) {
+                    out.write(buf.array(), 0, buf.position());
+                    out.flush();
+                    buf.clear();
+                }
+            } catch (SocketException e) {
+                // reset: the run ended before reading all the input we sent
+            }
+        }
+    }
+
+    private static void forward(InputStream input, SocketChannel channel) {
+        byte[] bytes = new byte[1024];
+        try {
+            int n;
+            while ((n = input.read(bytes)) >= 0) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes, 0, n);
+                while (buf.hasRemaining())
+                    channel.write(buf);
+            }
+            channel.shutdownOutput(); // PROMPT sees end of input
+        } catch (IOException e) {
+            // the run ended and the daemon closed the connection
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package skeptical;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Base class of the classes the Compiler generates. A subclass implements
+ * {@link #run()} with the program's top-level statements and has one method
+ * per FUNCTION; the protected helpers here are the runtime support that
+ * generated code calls into.
+ *
+ * Globals live in an array indexed by the slot the Compiler assigned to
+ * each global name; function locals are JVM local variables.
+ */
+public abstract class CompiledProgram {
+    private String[] globalNames;
+    private String[] functionNames;
+    protected Value[] constants;
+    protected Value[] globals;
+    private boolean[] defined;
+    private Reader reader;
+    private OutputSink out;
+    private final Random random = new Random();
+
+    void link(String[] globalNames, String[] functionNames, Value[] constants) {
+        this.globalNames = globalNames;
+        this.functionNames = functionNames;
+        this.constants = constants;
+    }
+
+    /** The program's top-level code: its static and dynamic divisions. */
+    protected abstract void run();
+
+    /**
+     * Runs the program with fresh globals, the way Evaluator.valueOf does.
+     * Returns null: programs communicate through DISPLAY.
+     */
+    public Value execute(Reader reader, PrintStream out) {
+        return execute(reader, OutputSink.of(out));
+    }
+
+    /** Runs the program with its DISPLAY output going to out, which is flushed when the run ends. */
+    public Value execute(Reader reader, OutputSink out) {
+        this.reader = reader;
+        this.out = out;
+        globals = new Value[globalNames.length];
+        defined = new boolean[functionNames.length];
+        try {
+            run();
+        } catch (StackOverflowError e) {
+            // compiled functions call each other on the Java stack, except self tail calls
+            throw new RuntimeException("Recursion too deep for the Java stack; run with --deep");
+        } finally {
+            out.flush();
+        }
+        return null;
+    }
+
+    protected final Value global(int slot) {
+        Value v = globals[slot];
+        if (v == null)
+            throw new Env.LookupException("No binding found for name: " + globalNames[slot]);
+        return v;
+    }
+
+    protected final void setGlobal(Value val, int slot, String typeLock) {
+        globals[slot] = Operators.assign(globals[slot], val, typeLock, globalNames[slot]);
+    }
+
+    protected final void defineConst(Value val, int slot) {
+        if (globals[slot] != null)
+            throw new RuntimeException("Cannot reassign constant: " + globalNames[slot]);
+        globals[slot] = new Value(val, true);
+    }
+
+    protected static Value local(Value v, String name) {
+        if (v == null)
+            throw new Env.LookupException("No binding found for name: " + name);
+        return v;
+    }
+
+    /** Whether v is bound and type-locked, for tail calls. */
+    protected static boolean locked(Value v) {
+        return v != null && v.isLocked();
+    }
+
+    protected final void define(int function) {
+        defined[function] = true;
+    }
+
+    protected final void checkDefined(int function) {
+        if (!defined[function])
+            throw new Env.LookupException("No function found for name: " + functionNames[function]);
+    }
+
+    protected static Value noFunction(String name) {
+        throw new Env.LookupException("No function found for name: " + name);
+    }
+
+    protected static Value arityError(String name, int expected, int actual) {
+        throw new RuntimeException("Function " + name + " expects " + expected
+                + " argument(s) but got " + actual);
+    }
+
+    protected static int toInt(Value v) {
+        return (int) v.asNumber();
+    }
+
+    protected final void display(Value v) {
+        out.display(v);
+    }
+
+    protected final Value input(String prompt) {
+        try {
+            out.flush();
+            return Operators.parseInput(reader.readInput(Operators.stripQuotes(prompt)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading input: " + e.getMessage());
+        }
+    }
+
+    protected final Value random(Value minValue, Value maxValue) {
+        int min = toInt(minValue), max = toInt(maxValue);
+        if (max < min)
+            throw new RuntimeException("Empty RANDOM range: " + min + " TO " + max);
+        return Value.of(min + random.nextInt(max - min + 1));
+    }
+}
@@ -0,0 +1,539 @@
+package skeptical;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static skeptical.ClassEmitter.*;
+
+/**
+ * Compiles a Program to JVM bytecode, so that long-running programs are
+ * executed by the JIT instead of by walking the AST.
+ *
+ * The program becomes a subclass of CompiledProgram: the static and dynamic
+ * divisions form its run() method, and each FUNCTION becomes a method whose
+ * parameters and locals are JVM locals. Globals are slots in an array, and
+ * CALL sites are bound to their target method at compile time. Operators
+ * call into Operators, so compiled and interpreted programs agree.
+ *
+ * A tail call (see Resolver) of a function to itself does not call: it
+ * stores the arguments into the parameters and jumps back to the start of
+ * the method, so tail recursion runs in constant Java stack as it does in
+ * the Evaluator. A tail call to another function is an ordinary call, so
+ * mutual recursion is as deep as the Java stack allows.
+ *
+ * Programs whose functions read the locals of an enclosing function
+ * (closures), or that define two functions with the same name, are not
+ * compiled; compile() throws UnsupportedOperationException and the caller
+ * should fall back to the Evaluator.
+ */
+public class Compiler implements AST.Visitor<Void> {
+    private static final String BASE = "skeptical/CompiledProgram";
+    private static final String OPS = "skeptical/Operators";
+    private static final String VALUE = "skeptical/Value";
+    private static final String V = "Lskeptical/Value;";
+    private static final String BINARY = "(" + V + V + ")" + V;
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    /** Defines each compiled program in its own loader, so it can be unloaded. */
+    private static final class Loader extends ClassLoader {
+        Loader() {
+            super(Compiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private ClassEmitter cls;
+    private ClassEmitter.Method m;
+    private AST.FuncDef current; // function being compiled, null for run()
+    private ClassEmitter.Label entry; // where current's locals are reset, for tail calls
+    private int nextLocal; // next free JVM local for loop counters
+    private final Map<Symbol, Integer> globalSlots = new HashMap<>();
+    private final List<String> globalNames = new ArrayList<>();
+    private final Map<Object, Integer> constantSlots = new HashMap<>();
+    private final List<Value> constants = new ArrayList<>();
+    private final Map<Symbol, AST.FuncDef> functions = new HashMap<>();
+    private final List<AST.FuncDef> functionOrder = new ArrayList<>();
+
+    public CompiledProgram compile(AST.Program p) {
+        new Resolver().resolve(p);
+        new TypeChecker().check(p);
+        globalSlots.clear();
+        globalNames.clear();
+        constantSlots.clear();
+        constants.clear();
+        functions.clear();
+        functionOrder.clear();
+        collectFunctions(p.dynamicDivision().getStatements());
+
+        cls = new ClassEmitter("skeptical/compiled/Program" + classCounter.incrementAndGet(), BASE);
+        ClassEmitter.Method init = cls.method(ACC_PUBLIC, "<init>", "()V", 1);
+        init.local(ALOAD, 0).invoke(INVOKESPECIAL, BASE, "<init>", "()V").op(RETURN, 0);
+
+        begin(null, cls.method(ACC_PUBLIC, "run", "()V", 1));
+        p.accept(this, null);
+        m.op(RETURN, 0);
+        for (AST.FuncDef f : functionOrder)
+            compileFunction(f);
+
+        byte[] bytes = cls.toBytes();
+        try {
+            Class<?> c = new Loader().define(cls.name().replace('/', '.'), bytes);
+            CompiledProgram program = (CompiledProgram) c.getDeclaredConstructor().newInstance();
+            String[] fnNames = new String[functionOrder.size()];
+            for (int i = 0; i < fnNames.length; i++)
+                fnNames[i] = functionOrder.get(i).getName();
+            program.link(globalNames.toArray(new String[0]), fnNames, constants.toArray(new Value[0]));
+            return program;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Generated invalid class: " + e, e);
+        }
+    }
+
+    private void collectFunctions(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            if (s instanceof AST.FuncDef f) {
+                if (functions.put(f.symbol(), f) != null)
+                    throw new UnsupportedOperationException("function " + f.getName() + " is defined twice");
+                functionOrder.add(f);
+                collectFunctions(f.getBody());
+            } else if (s instanceof AST.IfStmt i) {
+                collectFunctions(i.getThenBranch());
+                collectFunctions(i.getElseBranch());
+            } else if (s instanceof AST.LoopStmt l) {
+                collectFunctions(l.getBody());
+            }
+        }
+    }
+
+    private void begin(AST.FuncDef f, ClassEmitter.Method method) {
+        current = f;
+        m = method;
+        nextLocal = 1 + (f == null ? 0 : f.getFrameSize());
+    }
+
+    private static String methodName(AST.FuncDef f) {
+        return "fn$" + f.getName();
+    }
+
+    private static String descriptor(int params) {
+        return "(" + V.repeat(params) + ")" + V;
+    }
+
+    private void compileFunction(AST.FuncDef f) {
+        int params = f.getParameters().size();
+        begin(f, cls.method(ACC_PUBLIC, methodName(f), descriptor(params), 1 + params));
+        entry = m.label();
+        m.mark(entry);
+        for (int slot = params; slot < f.getFrameSize(); slot++)
+            m.op(ACONST_NULL, 1).local(ASTORE, 1 + slot);
+        for (AST.Statement s : f.getBody())
+            s.accept(this, null);
+        load(f.getReturnAddress().depth(), f.getReturnAddress().slot(), f.getReturnSymbol());
+        m.op(ARETURN, -1);
+    }
+
+    private int globalSlot(Symbol name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = globalNames.size();
+            globalSlots.put(name, slot);
+            globalNames.add(name.name());
+        }
+        return slot;
+    }
+
+    private void constant(Object key, Value v) {
+        Integer slot = constantSlots.get(key);
+        if (slot == null) {
+            slot = constants.size();
+            constantSlots.put(key, slot);
+            constants.add(v);
+        }
+        m.local(ALOAD, 0).field(GETFIELD, BASE, "constants", "[" + V).iconst(slot).op(AALOAD, -1);
+    }
+
+    private int localFor(int depth, int slot, Symbol name) {
+        if (depth != 0)
+            throw new UnsupportedOperationException("closure over " + name + " in " + current.getName());
+        return 1 + slot;
+    }
+
+    /** Pushes the value of a variable. */
+    private void load(int depth, int slot, Symbol name) {
+        if (depth == AST.GLOBAL) {
+            m.local(ALOAD, 0).iconst(globalSlot(name)).invoke(INVOKEVIRTUAL, BASE, "global", "(I)" + V);
+        } else {
+            m.local(ALOAD, localFor(depth, slot, name)).ldcString(name.name())
+                    .invoke(INVOKESTATIC, BASE, "local", "(" + V + "Ljava/lang/String;)" + V);
+        }
+    }
+
+    /** Pops a value and binds it to a variable, enforcing constants and type locks. */
+    private void store(AST.Addressed node, String typeLock) {
+        Symbol name = node.symbol();
+        if (node.depth() == AST.GLOBAL) {
+            m.local(ALOAD, 0).op(SWAP, 0).iconst(globalSlot(name)).ldcString(typeLock)
+                    .invoke(INVOKEVIRTUAL, BASE, "setGlobal", "(" + V + "ILjava/lang/String;)V");
+        } else {
+            int local = localFor(node.depth(), node.slot(), name);
+            m.local(ALOAD, local).op(SWAP, 0).ldcString(typeLock).ldcString(name.name())
+                    .invoke(INVOKESTATIC, OPS, "assign", "(" + V + V + "Ljava/lang/String;Ljava/lang/String;)" + V)
+                    .local(ASTORE, local);
+        }
+    }
+
+    private Void binary(AST.BinaryExp e, String operator) {
+        e.left().accept(this, null);
+        e.right().accept(this, null);
+        m.invoke(INVOKESTATIC, OPS, operator, BINARY);
+        return null;
+    }
+
+    /**
+     * OR (decides = IFNE) or AND (IFEQ): the left operand's truth stays
+     * on the stack as the result if it decides, else the right one's does.
+     */
+    private Void logical(AST.BinaryExp e, int decides) {
+        ClassEmitter.Label end = m.label();
+        e.left().accept(this, null);
+        m.invoke(INVOKESTATIC, OPS, "isTrue", "(" + V + ")Z").op(DUP, 1).jump(decides, end).op(POP, -1);
+        e.right().accept(this, null);
+        m.invoke(INVOKESTATIC, OPS, "isTrue", "(" + V + ")Z").mark(end);
+        m.invoke(INVOKESTATIC, OPS, "truth", "(Z)" + V);
+        return null;
+    }
+
+    /**
+     * Jumps to target if condition's truth is when, without making a Value
+     * of it: comparisons branch on Value.equals or Operators.compare, and
+     * AND and OR branch operand by operand.
+     */
+    private void branch(AST.Exp condition, boolean when, ClassEmitter.Label target) {
+        AST.Exp e = condition;
+        while (e instanceof AST.GroupExp || e instanceof AST.FactorExp)
+            e = e instanceof AST.GroupExp g ? g.getExpr() : ((AST.FactorExp) e).getExpr();
+        if (e instanceof AST.DisjExp || e instanceof AST.ConjExp) {
+            AST.BinaryExp b = (AST.BinaryExp) e;
+            boolean or = e instanceof AST.DisjExp;
+            if (when == or) {
+                branch(b.left(), when, target);
+                branch(b.right(), when, target);
+            } else {
+                ClassEmitter.Label skip = m.label();
+                branch(b.left(), !when, skip);
+                branch(b.right(), when, target);
+                m.mark(skip);
+            }
+            return;
+        }
+        if (e instanceof AST.CompExp c) {
+            c.left().accept(this, null);
+            c.right().accept(this, null);
+            String op = c.operator();
+            if (op.equals("==") || op.equals("!=")) {
+                m.invoke(INVOKEVIRTUAL, VALUE, "equals", "(Ljava/lang/Object;)Z");
+                m.jump(op.equals("==") == when ? IFNE : IFEQ, target);
+                return;
+            }
+            m.invoke(INVOKESTATIC, OPS, "compare", "(" + V + V + ")I");
+            switch (op) {
+            case "<":
+                m.jump(when ? IFLT : IFGE, target);
+                return;
+            case "<=":
+                m.jump(when ? IFLE : IFGT, target);
+                return;
+            case ">":
+                m.jump(when ? IFGT : IFLE, target);
+                return;
+            case ">=":
+                m.jump(when ? IFGE : IFLT, target);
+                return;
+            default:
+                throw new RuntimeException("Unknown operator: " + op);
+            }
+        }
+        e.accept(this, null);
+        m.invoke(INVOKESTATIC, OPS, "isTrue", "(" + V + ")Z").jump(when ? IFNE : IFEQ, target);
+    }
+
+    private void statements(List<AST.Statement> statements) {
+        if (statements != null)
+            for (AST.Statement s : statements)
+                s.accept(this, null);
+    }
+
+    @Override
+    public Void visit(AST.Program p, Env env) {
+        p.staticDivision().accept(this, env);
+        p.dynamicDivision().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.StaDiv d, Env env) {
+        for (AST.StaDecl decl : d.getStatements())
+            decl.accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.DynDiv d, Env env) {
+        statements(d.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.ProgId sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Auth sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Date sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Const sd, Env env) {
+        sd.value().accept(this, env);
+        m.local(ALOAD, 0).op(SWAP, 0).iconst(globalSlot(sd.symbol()))
+                .invoke(INVOKEVIRTUAL, BASE, "defineConst", "(" + V + "I)V");
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.IdExp e, Env env) {
+        load(e.depth(), e.slot(), e.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.NumExp e, Env env) {
+        constant(e.value(), Value.of(e.value()));
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.StrExp e, Env env) {
+        constant("\"" + e.value(), new Value(e.value()));
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.DisjExp e, Env env) {
+        return logical(e, IFNE);
+    }
+
+    @Override
+    public Void visit(AST.ConjExp e, Env env) {
+        return logical(e, IFEQ);
+    }
+
+    @Override
+    public Void visit(AST.CompExp e, Env env) {
+        switch (e.operator()) {
+        case "==":
+            return binary(e, "eq");
+        case "!=":
+            return binary(e, "ne");
+        case "<":
+            return binary(e, "lt");
+        case "<=":
+            return binary(e, "le");
+        case ">":
+            return binary(e, "gt");
+        case ">=":
+            return binary(e, "ge");
+        default:
+            throw new RuntimeException("Unknown operator: " + e.operator());
+        }
+    }
+
+    @Override
+    public Void visit(AST.SumExp e, Env env) {
+        return binary(e, e.operator().equals("+") ? "add" : "sub");
+    }
+
+    @Override
+    public Void visit(AST.TermExp e, Env env) {
+        switch (e.operator()) {
+        case "*":
+            return binary(e, "mul");
+        case "/":
+            return binary(e, "div");
+        case "MOD":
+            return binary(e, "mod");
+        default:
+            throw new RuntimeException("Unknown operator: " + e.operator());
+        }
+    }
+
+    @Override
+    public Void visit(AST.PowExp e, Env env) {
+        return binary(e, "pow");
+    }
+
+    @Override
+    public Void visit(AST.FactorExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Void visit(AST.GroupExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Void visit(AST.UnaryOpExp e, Env env) {
+        if (!e.getOperator().equals("-"))
+            throw new RuntimeException("Unknown operator: " + e.getOperator());
+        e.getExpr().accept(this, env);
+        m.invoke(INVOKESTATIC, OPS, "neg", "(" + V + ")" + V);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.CallExp e, Env env) {
+        call(e.getCall());
+        return null;
+    }
+
+    /** Pushes the result of a CALL. */
+    private void call(AST.CallStmt c) {
+        AST.FuncDef f = functions.get(c.symbol());
+        if (f == null) {
+            m.ldcString(c.getIdentifier())
+                    .invoke(INVOKESTATIC, BASE, "noFunction", "(Ljava/lang/String;)" + V);
+            return;
+        }
+        int index = functionOrder.indexOf(f);
+        m.local(ALOAD, 0).iconst(index).invoke(INVOKEVIRTUAL, BASE, "checkDefined", "(I)V");
+        int params = f.getParameters().size();
+        if (c.getArguments().size() != params) {
+            m.ldcString(f.getName()).iconst(params).iconst(c.getArguments().size())
+                    .invoke(INVOKESTATIC, BASE, "arityError", "(Ljava/lang/String;II)" + V);
+            return;
+        }
+        m.local(ALOAD, 0);
+        for (AST.Exp arg : c.getArguments()) {
+            arg.accept(this, null);
+            m.invoke(INVOKEVIRTUAL, VALUE, "plain", "()" + V);
+        }
+        m.invoke(INVOKEVIRTUAL, cls.name(), methodName(f), descriptor(params));
+    }
+
+    @Override
+    public Void visit(AST.Assign dd, Env env) {
+        AST.CallStmt call = dd.getTailCall();
+        if (call != null && current != null && functions.get(call.symbol()) == current
+                && call.getArguments().size() == current.getParameters().size())
+            tailCall(dd, call);
+        dd.getExpression().accept(this, env);
+        store(dd, dd.getType());
+        return null;
+    }
+
+    /**
+     * Binds the arguments of a self tail call to the parameters and jumps
+     * back to entry. As in the Evaluator, a return variable with a type
+     * lock makes an ordinary call instead, so the lock checks the result;
+     * that call is emitted after this.
+     */
+    private void tailCall(AST.Assign dd, AST.CallStmt call) {
+        ClassEmitter.Label locked = m.label();
+        m.local(ALOAD, localFor(dd.depth(), dd.slot(), dd.symbol()))
+                .invoke(INVOKESTATIC, BASE, "locked", "(" + V + ")Z").jump(IFNE, locked);
+        List<AST.Exp> args = call.getArguments();
+        for (AST.Exp arg : args) {
+            arg.accept(this, null);
+            m.invoke(INVOKEVIRTUAL, VALUE, "plain", "()" + V);
+        }
+        for (int i = args.size() - 1; i >= 0; i--)
+            m.local(ASTORE, 1 + i);
+        m.jump(GOTO, entry).mark(locked);
+    }
+
+    @Override
+    public Void visit(AST.Print dd, Env env) {
+        m.local(ALOAD, 0);
+        dd.getOutput().accept(this, env);
+        m.invoke(INVOKEVIRTUAL, BASE, "display", "(" + V + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Input dd, Env env) {
+        m.local(ALOAD, 0).ldcString(dd.getPrompt())
+                .invoke(INVOKEVIRTUAL, BASE, "input", "(Ljava/lang/String;)" + V);
+        store(dd, null);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.IfStmt dd, Env env) {
+        ClassEmitter.Label otherwise = m.label(), end = m.label();
+        branch(dd.getCondition(), false, otherwise);
+        statements(dd.getThenBranch());
+        m.jump(GOTO, end).mark(otherwise);
+        statements(dd.getElseBranch());
+        m.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.LoopStmt dd, Env env) {
+        int counter = nextLocal++, limit = nextLocal++;
+        dd.getStart().accept(this, env);
+        m.invoke(INVOKESTATIC, BASE, "toInt", "(" + V + ")I").local(ISTORE, counter);
+        dd.getEnd().accept(this, env);
+        m.invoke(INVOKESTATIC, BASE, "toInt", "(" + V + ")I").local(ISTORE, limit);
+        // Exits on counter == limit before the increment, as the Evaluator
+        // does, so a limit of Integer.MAX_VALUE can't wrap the counter.
+        ClassEmitter.Label top = m.label(), end = m.label();
+        m.local(ILOAD, counter).local(ILOAD, limit).jump(IF_ICMPGT, end);
+        m.mark(top).local(ILOAD, counter).op(I2D, 1).invoke(INVOKESTATIC, VALUE, "of", "(D)" + V);
+        store(dd, null);
+        statements(dd.getBody());
+        m.local(ILOAD, counter).local(ILOAD, limit).jump(IF_ICMPEQ, end);
+        m.iinc(counter, 1).jump(GOTO, top).mark(end);
+        nextLocal -= 2;
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.CallStmt dd, Env env) {
+        call(dd);
+        m.op(POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.FuncDef dd, Env env) {
+        m.local(ALOAD, 0).iconst(functionOrder.indexOf(dd)).invoke(INVOKEVIRTUAL, BASE, "define", "(I)V");
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Rand dd, Env env) {
+        m.local(ALOAD, 0);
+        dd.getMin().accept(this, env);
+        dd.getMax().accept(this, env);
+        m.invoke(INVOKEVIRTUAL, BASE, "random", "(" + V + V + ")" + V);
+        store(dd, null);
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+package skeptical;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived server mode, so that short jobs don't each pay for JVM
+ * startup, ANTLR class loading and parser warmup. The daemon listens on a
+ * Unix domain socket. Each connection carries one "run file" request,
+ * followed by the input for any PROMPTs. The program's output is streamed
+ * back, and the connection is closed when the run is over. See Client.
+ *
+ * Runs are independent, each with its own Evaluator and GlobalEnv, but
+ * they share one parse cache and, being in one JVM, the parser's DFA cache
+ * and the JIT's compiled code.
+ *
+ * Usage: Interpreter --daemon [--compile|--ir] [--threads N] [socket]
+ */
+public class Daemon {
+    private static final int CACHED_PROGRAMS = 256;
+
+    private final Path socket;
+    private final BatchRunner.Engine engine;
+    private final ExecutorService workers;
+    private final ParseCache cache = Reader.newCache(CACHED_PROGRAMS);
+    private volatile ServerSocketChannel server;
+
+    public Daemon(Path socket, BatchRunner.Engine engine, int threads) {
+        this.socket = socket;
+        this.engine = engine;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = Client.defaultSocket();
+        BatchRunner.Engine engine = BatchRunner.Engine.EVALUATOR;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--compile"))
+                engine = BatchRunner.Engine.COMPILER;
+            else if (args[i].equals("--ir"))
+                engine = BatchRunner.Engine.IR;
+            else if (args[i].equals("--threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else
+                socket = Paths.get(args[i]);
+        }
+        Daemon daemon = new Daemon(socket, engine, threads);
+        Path bound = socket;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+                Files.deleteIfExists(bound);
+            } catch (IOException e) {
+                // exiting anyway
+            }
+        }));
+        System.out.println("Listening on " + socket);
+        daemon.serve();
+    }
+
+    public ParseCache cache() {
+        return cache;
+    }
+
+    /**
+     * Accepts connections until close() is called. A stale socket file left
+     * behind by an earlier daemon is replaced.
+     */
+    public void serve() throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            this.server = server;
+            while (server.isOpen()) {
+                SocketChannel connection;
+                try {
+                    connection = server.accept();
+                } catch (IOException e) {
+                    if (!server.isOpen())
+                        break; // closed by close()
+                    throw e;
+                }
+                workers.execute(() -> handle(connection));
+            }
+        } finally {
+            workers.shutdown();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /** Stops accepting connections; runs in progress are allowed to finish. */
+    public void close() throws IOException {
+        ServerSocketChannel s = server;
+        if (s != null)
+            s.close();
+    }
+
+    private void handle(SocketChannel connection) {
+        try (connection) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection)));
+            PrintStream out = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+            String request = in.readLine();
+            Printer printer = new Printer(out);
+            if (request == null || !request.startsWith("run ")) {
+                out.println("Error: expected \"run <file>\" but got " + request);
+            } else {
+                Reader reader = new Reader(in, out, cache);
+                try {
+                    AST.Program p = reader.load(request.substring(4));
+                    printer.print(BatchRunner.execute(p, new Evaluator(reader, out), reader, out, engine));
+                } catch (IOException e) {
+                    out.println("Error reading input:" + e.getMessage());
+                } catch (RuntimeException e) {
+                    printer.print(e);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the client went away; nothing to report it to
+        }
+    }
+}
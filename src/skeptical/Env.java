@@ -1,15 +1,40 @@
 package skeptical;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
 /**
  * Representation of an environment for the Skeptical language,
  * which maps variable names to runtime values.
  *
  * Compatible with the AST structure and visitor-based interpretation.
+ *
+ * Names are Symbols, which are unique per name, so environments match them
+ * by reference. Looking a name up by its text goes through the Symbol
+ * table first.
+ *
+ * NumberFrameEnv and GlobalEnv can also hold a number unboxed, in a double
+ * array beside their Values, so that the Evaluator can store the result of
+ * arithmetic without allocating (see setNumber). A Value is made for such a
+ * number only when something reads it as one.
+ *
+ * Concurrency: ExtendEnv is immutable and FrameEnv belongs to the thread
+ * running the call, so neither takes a lock. GlobalEnv is the only shared
+ * mutable environment; its readers never lock or block, and writers
+ * serialize among themselves.
  */
 public interface Env {
-	Value get(String searchVar);
+	Value get(Symbol searchVar);
 	boolean isEmpty();
 
+	default Value get(String searchVar) {
+		Symbol s = Symbol.find(searchVar);
+		if (s == null) // no program has used the name, so nothing binds it
+			throw new LookupException("No binding found for name: " + searchVar);
+		return get(s);
+	}
+
 	@SuppressWarnings("serial")
 	public static class LookupException extends RuntimeException {
 		public LookupException(String message) {
@@ -21,7 +46,7 @@ public interface Env {
 	 * Represents an empty environment (base case for scoping).
 	 */
 	public static class EmptyEnv implements Env {
-		public Value get(String searchVar) {
+		public Value get(Symbol searchVar) {
 			throw new LookupException("No binding found for name: " + searchVar);
 		}
 
@@ -32,20 +57,25 @@ public interface Env {
 
 	/**
 	 * Represents an environment extended with a single variable binding.
+	 * Immutable, so reads need no synchronization.
 	 */
 	public static class ExtendEnv implements Env {
 		private final Env savedEnv;
-		private final String var;
+		private final Symbol var;
 		private final Value val;
 
-		public ExtendEnv(Env savedEnv, String var, Value val) {
+		public ExtendEnv(Env savedEnv, Symbol var, Value val) {
 			this.savedEnv = savedEnv;
 			this.var = var;
 			this.val = val;
 		}
 
-		public synchronized Value get(String searchVar) {
-			if (searchVar.equals(var))
+		public ExtendEnv(Env savedEnv, String var, Value val) {
+			this(savedEnv, Symbol.of(var), val);
+		}
+
+		public Value get(Symbol searchVar) {
+			if (searchVar == var)
 				return val;
 			return savedEnv.get(searchVar);
 		}
@@ -58,7 +88,7 @@ public interface Env {
 			return savedEnv;
 		}
 
-		public String var() {
+		public Symbol var() {
 			return var;
 		}
 
@@ -67,49 +97,273 @@ public interface Env {
 		}
 	}
 
+	/**
+	 * Represents the activation frame of a function call. Bindings live in
+	 * an array indexed by the slots the Resolver assigned, so resolved names
+	 * are read by (depth, slot) instead of by comparing strings. A frame is
+	 * only touched by the thread executing the call.
+	 */
+	public static class FrameEnv implements Env {
+		// In slots of a NumberFrameEnv: the slot's number is in numbers, unboxed.
+		static final Value UNBOXED = new Value(Double.NaN);
+
+		private final Env parent;
+		private final Symbol[] names;
+		final Value[] slots;
+
+		public FrameEnv(Env parent, Symbol[] names) {
+			this.parent = parent;
+			this.names = names;
+			this.slots = new Value[names.length];
+		}
+
+		public Value get(Symbol searchVar) {
+			for (int i = 0; i < names.length; i++) {
+				if (slots[i] != null && names[i] == searchVar)
+					return value(i);
+			}
+			return parent.get(searchVar);
+		}
+
+		public Value get(int depth, int slot) {
+			FrameEnv frame = outer(depth);
+			Value val = frame.value(slot);
+			if (val == null)
+				throw new LookupException("No binding found for name: " + frame.names[slot]);
+			return val;
+		}
+
+		/** Returns the value in a slot, or null if it has not been bound yet. */
+		public Value find(int depth, int slot) {
+			return outer(depth).value(slot);
+		}
+
+		public void set(int depth, int slot, Value val) {
+			outer(depth).slots[slot] = val;
+		}
+
+		/** The number in a slot, read without boxing it if setNumber() bound it. */
+		public double number(int depth, int slot) {
+			FrameEnv frame = outer(depth);
+			if (frame.slots[slot] == UNBOXED)
+				return ((NumberFrameEnv) frame).numbers[slot];
+			return frame.get(0, slot).asNumber();
+		}
+
+		/**
+		 * Binds a number to a slot without boxing it. Returns false, and
+		 * binds nothing, if the frame is not a NumberFrameEnv or the slot
+		 * holds a type-locked value: that lock has to be checked and kept,
+		 * which takes a Value.
+		 */
+		public boolean setNumber(int depth, int slot, double number) {
+			if (!(outer(depth) instanceof NumberFrameEnv frame))
+				return false;
+			Value old = frame.slots[slot];
+			if (old != null && old != UNBOXED && old.isLocked())
+				return false;
+			frame.numbers[slot] = number;
+			frame.slots[slot] = UNBOXED;
+			return true;
+		}
+
+		/** Returns a copy of the first n slots: a call's arguments, before its body runs. */
+		public Value[] arguments(int n) {
+			Value[] args = Arrays.copyOf(slots, n);
+			for (int i = 0; i < n; i++)
+				args[i] = value(i);
+			return args;
+		}
+
+		private Value value(int slot) {
+			Value val = slots[slot];
+			return val == UNBOXED ? Value.of(((NumberFrameEnv) this).numbers[slot]) : val;
+		}
+
+		private FrameEnv outer(int depth) {
+			FrameEnv frame = this;
+			for (; depth > 0; depth--)
+				frame = (FrameEnv) frame.parent;
+			return frame;
+		}
+
+		public boolean isEmpty() {
+			return false;
+		}
+
+		public Env parent() {
+			return parent;
+		}
+	}
+
+	/**
+	 * A frame that can hold numbers unboxed, for the functions with a START
+	 * loop: those are where the Evaluator stores numbers unboxed, and other
+	 * frames stay as small as they were.
+	 */
+	public static final class NumberFrameEnv extends FrameEnv {
+		private final double[] numbers;
+
+		public NumberFrameEnv(Env parent, Symbol[] names) {
+			super(parent, names);
+			this.numbers = new double[names.length];
+		}
+	}
+
 	/**
 	 * Represents a global environment with mutable bindings.
-	 * Uses a fixed-size array to simulate a map structure.
+	 * Uses an open-addressing hash table (linear probing) keyed by Symbols,
+	 * probed by their precomputed hashes and compared by reference; the
+	 * table doubles whenever it is three quarters full.
+	 *
+	 * Reads are lock-free: a reader takes the current table from a volatile
+	 * field and probes it with acquire loads. Writers hold the env's monitor,
+	 * publish a value before its key, and publish a resized table only after
+	 * it is fully built, so a reader never sees a key without its value. An
+	 * unboxed number is published before the UNBOXED mark that points to it.
 	 */
 	public static class GlobalEnv implements Env {
-		private static final int MAX_BINDINGS = 100;
-		private final String[] keys;
-		private final Value[] values;
-		private int size;
+		private static final int INITIAL_CAPACITY = 16;
+		private static final VarHandle KEY = MethodHandles.arrayElementVarHandle(Symbol[].class);
+		private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(Value[].class);
+		private static final VarHandle NUMBER = MethodHandles.arrayElementVarHandle(double[].class);
+		// In values: the binding's number is in numbers, unboxed.
+		private static final Value UNBOXED = new Value(Double.NaN);
+
+		private static final class Table {
+			final Symbol[] keys;
+			final Value[] values;
+			final double[] numbers;
+
+			Table(int capacity) {
+				keys = new Symbol[capacity];
+				values = new Value[capacity];
+				numbers = new double[capacity];
+			}
+		}
+
+		private volatile Table table;
+		private volatile int size;
 
 		public GlobalEnv() {
-			keys = new String[MAX_BINDINGS];
-			values = new Value[MAX_BINDINGS];
+			table = new Table(INITIAL_CAPACITY);
 			size = 0;
 		}
 
-		public synchronized Value get(String searchVar) {
-			for (int i = 0; i < size; i++) {
-				if (keys[i].equals(searchVar)) {
-					return values[i];
+		public Value get(Symbol searchVar) {
+			Value val = find(searchVar);
+			if (val == null)
+				throw new LookupException("No binding found for name: " + searchVar);
+			return val;
+		}
+
+		/** Returns the value bound to the name var, or null if there is none. */
+		public Value find(String var) {
+			Symbol s = Symbol.find(var);
+			return s == null ? null : find(s);
+		}
+
+		/** Returns the value bound to var, or null if there is none. */
+		public Value find(Symbol var) {
+			Table t = table;
+			while (true) {
+				int i = indexOf(t.keys, var);
+				if (KEY.getAcquire(t.keys, i) != null) {
+					Value val = (Value) VALUE.getAcquire(t.values, i);
+					return val == UNBOXED ? Value.of((double) NUMBER.getAcquire(t.numbers, i)) : val;
 				}
+				Table current = table;
+				if (current == t)
+					return null;
+				t = current; // resized while probing; retry on the new table
 			}
-			throw new LookupException("No binding found for name: " + searchVar);
 		}
 
-		public synchronized void extend(String var, Value val) {
-			for (int i = 0; i < size; i++) {
-				if (keys[i].equals(var)) {
-					values[i] = val; // overwrite existing
-					return;
+		/** Returns the number bound to var, read without boxing it if setNumber() bound it. */
+		public double number(Symbol var) {
+			Table t = table;
+			while (true) {
+				int i = indexOf(t.keys, var);
+				if (KEY.getAcquire(t.keys, i) != null) {
+					Value val = (Value) VALUE.getAcquire(t.values, i);
+					return val == UNBOXED ? (double) NUMBER.getAcquire(t.numbers, i) : val.asNumber();
 				}
+				Table current = table;
+				if (current == t)
+					throw new LookupException("No binding found for name: " + var);
+				t = current;
 			}
-			if (size < MAX_BINDINGS) {
-				keys[size] = var;
-				values[size] = val;
-				size++;
-			} else {
-				throw new RuntimeException("GlobalEnv capacity exceeded.");
-			}
+		}
+
+		public void extend(String var, Value val) {
+			extend(Symbol.of(var), val);
+		}
+
+		public synchronized void extend(Symbol var, Value val) {
+			Table t = table;
+			put(t, indexOf(t.keys, var), var, val);
+		}
+
+		/**
+		 * Binds var to a number without boxing it. Returns false, and binds
+		 * nothing, if var is a constant or holds a type-locked value, whose
+		 * checks take a Value.
+		 */
+		public synchronized boolean setNumber(Symbol var, double number) {
+			Table t = table;
+			int i = indexOf(t.keys, var);
+			Value old = t.values[i];
+			if (old != null && old != UNBOXED && (old.isConstant() || old.isLocked()))
+				return false;
+			NUMBER.setRelease(t.numbers, i, number);
+			put(t, i, var, UNBOXED);
+			return true;
+		}
+
+		/** Binds var in slot i of t, the slot indexOf() found for it. */
+		private void put(Table t, int i, Symbol var, Value val) {
+			VALUE.setRelease(t.values, i, val);
+			if (t.keys[i] != null)
+				return; // overwrote an existing binding
+			KEY.setRelease(t.keys, i, var);
+			size = size + 1;
+			if (size * 4 >= t.keys.length * 3)
+				resize(t);
 		}
 
 		public boolean isEmpty() {
 			return size == 0;
 		}
+
+		public int size() {
+			return size;
+		}
+
+		/** Returns the slot holding var, or the empty slot where it belongs. */
+		private static int indexOf(Symbol[] keys, Symbol var) {
+			int mask = keys.length - 1;
+			int h = var.hashCode();
+			int i = (h ^ (h >>> 16)) & mask;
+			Symbol k;
+			while ((k = (Symbol) KEY.getAcquire(keys, i)) != null) {
+				if (k == var)
+					return i;
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		private void resize(Table old) {
+			Table t = new Table(old.keys.length * 2);
+			for (int j = 0; j < old.keys.length; j++) {
+				if (old.keys[j] != null) {
+					int i = indexOf(t.keys, old.keys[j]);
+					t.keys[i] = old.keys[j];
+					t.values[i] = old.values[j];
+					t.numbers[i] = old.numbers[j];
+				}
+			}
+			table = t;
+		}
 	}
 }
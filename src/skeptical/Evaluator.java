@@ -1,242 +1,574 @@
 package skeptical;
 
-import java.util.Random;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
-import static skeptical.AST.*;
-import static skeptical.Value.*;
-import skeptical.Env.*; 
-import skeptical.ASTNode.*;
+import skeptical.Env.*;
+
+/**
+ * Tree-walking evaluator for Skeptical programs.
+ *
+ * Dispatch is the plain double dispatch of AST.Visitor: no reflection, and
+ * the common path throws no exceptions. Before running, a program goes
+ * through the Resolver, so variables are read and written by their lexical
+ * address: globals by name in the GlobalEnv, function locals by (depth,
+ * slot) in array-backed FrameEnvs. A CALL finds its function by the index
+ * the Resolver gave it, in a table filled in as FUNCTION statements run.
+ * Then the TypeChecker reports the type errors it can prove, before the
+ * program has any effect, and marks operators on proven numbers.
+ *
+ * Operator semantics and binding rules live in Operators, which the
+ * Compiler's generated code shares. The arithmetic and comparison
+ * operators are applied by their nodes (see AST.OperatorExp), which
+ * specialize themselves on the operand types they see.
+ *
+ * Operators the TypeChecker proved to work on numbers are evaluated
+ * unboxed, by number(): a proven expression makes no Value for its
+ * operands, and a SET of one in a START body stores its result unboxed in
+ * the variable (see Env.FrameEnv.setNumber), so arithmetic on numbers in a
+ * loop does not allocate. A START counter is kept the same way, updated
+ * in its slot on each iteration. A Value is made when the number is read
+ * otherwise, say by DISPLAY or as a CALL argument. (A SET outside loops
+ * runs once per call at most, where a Value costs less than the array a
+ * frame would need for unboxed numbers.)
+ *
+ * Function calls run on the Java stack, except for tail calls: a SET of
+ * the return variable to a CALL, as a function's last statement (see
+ * Resolver), hands the callee's frame back to the caller's call loop
+ * instead of nesting another call. So a tail-recursive function runs in
+ * constant Java stack. For deep recursion that is not in tail position,
+ * setExplicitStack(true) runs programs on a StackEvaluator instead, which
+ * keeps its call stack on the heap.
+ *
+ * With setMemoization(), each function the Resolver found pure gets a
+ * MemoCache, and a CALL of it with arguments seen before returns the
+ * remembered result without running the body. Tail calls are not looked
+ * up, so a tail-recursive function still runs in constant stack.
+ */
+public class Evaluator implements AST.Visitor<Value> {
+
+    /**
+     * A function definition together with the environment it was defined in.
+     * Its arity and frame layout are fixed when the definition runs. memo is
+     * null unless the function is pure and memoization is on.
+     */
+    static final class Function {
+        final AST.FuncDef def;
+        final Env env;
+        final int arity;
+        final Symbol[] frameNames;
+        final MemoCache memo;
+
+        Function(AST.FuncDef def, Env env, MemoCache memo) {
+            this.def = def;
+            this.env = env;
+            this.arity = def.getParameters().size();
+            this.frameNames = def.getFrameNames();
+            this.memo = memo;
+        }
+
+        /** A new frame for a call; see Env.NumberFrameEnv. */
+        FrameEnv frame() {
+            return def.hasLoops() ? new NumberFrameEnv(env, frameNames) : new FrameEnv(env, frameNames);
+        }
+    }
 
+    private final Reader reader;
+    private final OutputSink out;
+    private final Random random = new Random();
+    private Function[] functions = new Function[0]; // by the Resolver's function index
+    private GlobalEnv globals = new GlobalEnv();
+    private boolean explicitStack;
+    private int memoCapacity; // results per function; 0 when memoization is off
+    private MemoCache.Eviction memoEviction = MemoCache.Eviction.LRU;
+    private final Map<String, MemoCache> memos = new LinkedHashMap<>();
+    // A tail call waiting for the call loop in invoke(): set by a tail SET.
+    private Function tailFunction;
+    private FrameEnv tailFrame;
+
+    public Evaluator(Reader reader) {
+        this(reader, System.out);
+    }
 
-// Base AST Node
-abstract class ASTNode {}
+    public Evaluator(Reader reader, PrintStream out) {
+        this(reader, OutputSink.of(out));
+    }
 
-// Statements
-class Program extends ASTNode {
-    public Division division;
+    /** An evaluator whose DISPLAY output goes to out, which is flushed when a run ends. */
+    public Evaluator(Reader reader, OutputSink out) {
+        this.reader = reader;
+        this.out = out;
+    }
 
-    public Program(Division division) {
-        this.division = division;
+    /**
+     * Runs a program in a fresh global environment. Returns null: programs
+     * communicate through DISPLAY rather than through a result value.
+     */
+    public Value valueOf(AST.Program p) {
+        globals = new GlobalEnv();
+        Resolver resolver = new Resolver();
+        resolver.resolve(p);
+        new TypeChecker().check(p);
+        functions = new Function[resolver.functionCount()];
+        memos.clear();
+        tailFunction = null;
+        tailFrame = null;
+        try {
+            if (explicitStack)
+                return new StackEvaluator(this).run(p, globals);
+            return p.accept(this, globals);
+        } catch (StackOverflowError e) {
+            throw new RuntimeException("Recursion too deep for the Java stack; run with --deep");
+        } finally {
+            out.flush();
+        }
     }
-}
 
-abstract class Division extends ASTNode {}
+    public GlobalEnv globals() {
+        return globals;
+    }
 
-class StaDiv extends Division {
-    public ArrayList<StaDecl> idStatements;
+    /** Where DISPLAY writes. */
+    public OutputSink output() {
+        return out;
+    }
 
-    public StaDiv(ArrayList<StaDecl> idStatements) {
-        this.idStatements = idStatements;
+    /**
+     * Selects whether programs run on an explicit, heap-allocated stack, so
+     * that recursion depth is limited by memory rather than by the Java
+     * stack. That mode is slower; it is off by default.
+     */
+    public void setExplicitStack(boolean explicitStack) {
+        this.explicitStack = explicitStack;
     }
-}
 
-class DynDiv extends Division {
-    public ArrayList<Statement> statements;
+    /**
+     * Memoizes pure functions, remembering up to capacity results for each;
+     * 0 turns memoization off, which is the default.
+     */
+    public void setMemoization(int capacity, MemoCache.Eviction eviction) {
+        this.memoCapacity = capacity;
+        this.memoEviction = eviction;
+    }
 
-    public DynDiv(ArrayList<Statement> statements) {  // Add the constructor
-        this.statements = statements;
+    /** The memo caches of the last run, by function name, in definition order. */
+    public Map<String, MemoCache> memoCaches() {
+        return Collections.unmodifiableMap(memos);
     }
-}
 
+    private Value execute(List<AST.Statement> statements, Env env) {
+        if (statements == null)
+            return null;
+        for (AST.Statement s : statements)
+            s.accept(this, env);
+        return null;
+    }
 
-class StaDecl extends ASTNode {
-    public String identifier;
+    Value lookup(AST.Addressed node, String name, Env env) {
+        AST.Address a = node.address();
+        if (a.depth() == AST.GLOBAL)
+            return globals.get(node.symbol());
+        return ((FrameEnv) env).get(a.depth(), a.slot());
+    }
 
-    public StaDecl(String identifier) {
-        this.identifier = identifier;
+    /** Reads a variable holding a number, without boxing it if it is stored unboxed. */
+    double numberOf(AST.Addressed node, Env env) {
+        AST.Address a = node.address();
+        if (a.depth() == AST.GLOBAL)
+            return globals.number(node.symbol());
+        return ((FrameEnv) env).number(a.depth(), a.slot());
     }
-}
 
-abstract class Statement extends ASTNode {}
+    /**
+     * Binds a number to a variable, as store() with no type lock would,
+     * unboxed unless the variable is a constant or holds a type lock.
+     */
+    void storeNumber(AST.Addressed node, String name, double number, Env env) {
+        AST.Address a = node.address();
+        boolean stored = a.depth() == AST.GLOBAL ? globals.setNumber(node.symbol(), number)
+                : ((FrameEnv) env).setNumber(a.depth(), a.slot(), number);
+        if (!stored)
+            store(node, name, null, Value.of(number), env);
+    }
 
-class Assign extends Statement {
-    public String identifier;
-    public Expression expression;
-    public String term;
+    /**
+     * Binds val to a variable, enforcing constants and type locks. typeLock
+     * is the AS clause of a SET, or null.
+     */
+    void store(AST.Addressed node, String name, String typeLock, Value val, Env env) {
+        AST.Address a = node.address();
+        if (a.depth() == AST.GLOBAL) {
+            globals.extend(node.symbol(), Operators.assign(globals.find(node.symbol()), val, typeLock, name));
+        } else {
+            FrameEnv frame = (FrameEnv) env;
+            Value old = frame.find(a.depth(), a.slot());
+            frame.set(a.depth(), a.slot(), Operators.assign(old, val, typeLock, name));
+        }
+    }
 
-    public Assign(String identifier, Expression expression, String term) {
-        this.identifier = identifier;
-        this.expression = expression;
-        this.term = term;
+    void defineConst(AST.Const sd, Value val) {
+        if (globals.find(sd.symbol()) != null)
+            throw new RuntimeException("Cannot reassign constant: " + sd.id());
+        globals.extend(sd.symbol(), new Value(val, true));
     }
-}
 
-class Print extends Statement {
-    public Output output;
+    void display(Value val) {
+        out.display(val);
+    }
 
-    public Print(Output output) {
-        this.output = output;
+    void random(AST.Rand dd, Value minValue, Value maxValue, Env env) {
+        int min = (int) minValue.asNumber();
+        int max = (int) maxValue.asNumber();
+        if (max < min)
+            throw new RuntimeException("Empty RANDOM range: " + min + " TO " + max);
+        store(dd, dd.getIdentifier(), null, Value.of(min + random.nextInt(max - min + 1)), env);
     }
-}
 
-class Input extends Statement {
-    public String identifier;
-    public String prompt;
+    /** Returns the function a CALL names, checking that it exists and takes as many arguments as given. */
+    Function function(AST.CallStmt dd) {
+        int index = dd.getFunctionIndex();
+        Function f = index < 0 ? null : functions[index];
+        if (f == null)
+            throw new LookupException("No function found for name: " + dd.getIdentifier());
+        int n = dd.getArguments().size();
+        if (n != f.arity)
+            throw new RuntimeException("Function " + f.def.getName() + " expects "
+                    + f.arity + " argument(s) but got " + n);
+        return f;
+    }
 
-    public Input(String identifier, String prompt) {
-        this.identifier = identifier;
-        this.prompt = prompt;
+    /** Returns a function's result: the value of its RETURN variable once its body has run. */
+    Value returnValue(Function f, FrameEnv frame) {
+        AST.FuncDef def = f.def;
+        AST.Address address = def.getReturnAddress();
+        if (address.depth() == AST.GLOBAL)
+            return globals.get(def.getReturnSymbol());
+        return frame.get(address.depth(), address.slot());
     }
-}
 
+    /** Evaluates a CALL's arguments into a new frame for f. */
+    private FrameEnv bind(Function f, AST.CallStmt dd, Env env) {
+        List<AST.Exp> args = dd.getArguments();
+        FrameEnv frame = f.frame();
+        for (int i = 0; i < args.size(); i++)
+            frame.set(0, i, args.get(i).accept(this, env).plain());
+        return frame;
+    }
 
-class IfStmt extends Statement {
-    public Expression condition;
-    public ArrayList<Statement> trueBranch;
-    public ArrayList<Statement> falseBranch;
+    /**
+     * Runs a function body, then the bodies of any tail calls it ends with,
+     * in a loop. A tail call's result becomes the caller's return variable,
+     * which can't be locked (see visit(Assign)), so it is returned plain.
+     */
+    private Value invoke(Function f, FrameEnv frame) {
+        boolean tail = false;
+        while (true) {
+            execute(f.def.getBody(), frame);
+            if (tailFunction == null)
+                break;
+            f = tailFunction;
+            frame = tailFrame;
+            tailFunction = null;
+            tailFrame = null;
+            tail = true;
+        }
+        Value result = returnValue(f, frame);
+        return tail ? result.plain() : result;
+    }
 
-    public IfStmt(Expression condition, ArrayList<Statement> trueBranch, ArrayList<Statement> falseBranch) {
-        this.condition = condition;
-        this.trueBranch = trueBranch;
-        this.falseBranch = falseBranch;
+    @Override
+    public Value visit(AST.Program p, Env env) {
+        p.staticDivision().accept(this, env);
+        return p.dynamicDivision().accept(this, env);
     }
-}
 
-class LoopStmt extends Statement {
-    public String identifier;
-    public int start;
-    public int end;
-    public ArrayList<Statement> body;
+    @Override
+    public Value visit(AST.StaDiv d, Env env) {
+        for (AST.StaDecl decl : d.getStatements())
+            decl.accept(this, env);
+        return null;
+    }
 
-    public LoopStmt(String identifier, int start, int end, ArrayList<Statement> body) {
-        this.identifier = identifier;
-        this.start = start;
-        this.end = end;
-        this.body = body;
+    @Override
+    public Value visit(AST.DynDiv d, Env env) {
+        return execute(d.getStatements(), env);
     }
-}
 
-class CallStmt extends Statement {
-    public String functionName;
-    public ArrayList<Expression> arguments;
+    @Override
+    public Value visit(AST.ProgId sd, Env env) {
+        return null;
+    }
 
-    public CallStmt(String functionName, ArrayList<Expression> arguments) {
-        this.functionName = functionName;
-        this.arguments = arguments;
+    @Override
+    public Value visit(AST.Auth sd, Env env) {
+        return null;
     }
-}
 
-class FuncDef extends Statement {
-    public String functionName;
-    public ArrayList<Expression> arguments;
-    public ArrayList<Statement> body;
-    public String returnVar;
+    @Override
+    public Value visit(AST.Date sd, Env env) {
+        return null;
+    }
 
-    public FuncDef(String functionName, ArrayList<Expression> arguments, ArrayList<Statement> body, String returnVar) {
-        this.functionName = functionName;
-        this.arguments = arguments;
-        this.body = body;
-        this.returnVar = returnVar;
+    @Override
+    public Value visit(AST.Const sd, Env env) {
+        defineConst(sd, sd.value().accept(this, env));
+        return null;
     }
-}
 
-class Rand extends Statement {
-    public String identifier;
-    public int min;
-    public int max;
+    @Override
+    public Value visit(AST.IdExp e, Env env) {
+        return lookup(e, e.id(), env);
+    }
 
-    // Constructor
-    public Rand(String identifier, int min, int max) {
-        this.identifier = identifier;
-        this.min = min;
-        this.max = max;
+    @Override
+    public Value visit(AST.NumExp e, Env env) {
+        return Value.of(e.value());
     }
 
-    // Method to generate a random number
-    public int generateRandom() {
-        Random rand = new Random();
-        return rand.nextInt((max - min) + 1) + min;  // Returns a value between min and max, inclusive
+    @Override
+    public Value visit(AST.StrExp e, Env env) {
+        return new Value(e.value());
     }
-}
-// Expressions
-abstract class Expression extends ASTNode {}
 
-class Disjunction extends Expression {
-    public ArrayList<Conjunction> conjunctions;
+    /**
+     * Evaluates a condition to a Java boolean. Comparisons, AND and OR are
+     * decided without making a Value for their result, and AND and OR stop
+     * at the first operand that decides.
+     */
+    boolean test(AST.Exp e, Env env) {
+        if (e instanceof AST.CompExp c) {
+            if (c.proven())
+                return c.testNumbers(number(c.left(), env), number(c.right(), env));
+            return c.test(c.left().accept(this, env), c.right().accept(this, env));
+        }
+        if (e instanceof AST.DisjExp d)
+            return test(d.left(), env) || test(d.right(), env);
+        if (e instanceof AST.ConjExp c)
+            return test(c.left(), env) && test(c.right(), env);
+        if (e instanceof AST.GroupExp g)
+            return test(g.getExpr(), env);
+        if (e instanceof AST.FactorExp f)
+            return test(f.getExpr(), env);
+        return Operators.isTrue(e.accept(this, env));
+    }
 
-    public Disjunction(ArrayList<Conjunction> conjunctions) {
-        this.conjunctions = conjunctions;
+    /**
+     * Evaluates an expression the TypeChecker proved to be a number. Proven
+     * operators below it are applied to unboxed operands, and variables are
+     * read without boxing them.
+     */
+    double number(AST.Exp e, Env env) {
+        if (e instanceof AST.OperatorExp o && o.proven())
+            return o.applyNumbers(number(o.left(), env), number(o.right(), env));
+        if (e instanceof AST.IdExp id)
+            return numberOf(id, env);
+        if (e instanceof AST.NumExp n)
+            return n.value();
+        if (e instanceof AST.GroupExp g)
+            return number(g.getExpr(), env);
+        if (e instanceof AST.FactorExp f)
+            return number(f.getExpr(), env);
+        return e.accept(this, env).asNumber();
     }
-}
 
-class Conjunction extends Expression {
-    public ArrayList<Comparison> comparisons;
+    /** Whether a SET of e can store a number unboxed: e is a proven arithmetic operator or a number. */
+    private static boolean unboxed(AST.Exp e) {
+        while (e instanceof AST.GroupExp || e instanceof AST.FactorExp)
+            e = e instanceof AST.GroupExp g ? g.getExpr() : ((AST.FactorExp) e).getExpr();
+        return e instanceof AST.OperatorExp o && o.proven() && !(o instanceof AST.CompExp)
+                || e instanceof AST.NumExp;
+    }
 
-    public Conjunction(ArrayList<Comparison> comparisons) {
-        this.comparisons = comparisons;
+    @Override
+    public Value visit(AST.DisjExp e, Env env) {
+        return Operators.truth(test(e.left(), env) || test(e.right(), env));
     }
-}
 
-class Comparison extends Expression {
-    public Sum left;
-    public String operator;
-    public Sum right;
+    @Override
+    public Value visit(AST.ConjExp e, Env env) {
+        return Operators.truth(test(e.left(), env) && test(e.right(), env));
+    }
 
-    public Comparison(Sum left, String operator, Sum right) {
-        this.left = left;
-        this.operator = operator;
-        this.right = right;
+    @Override
+    public Value visit(AST.CompExp e, Env env) {
+        if (e.proven())
+            return Operators.truth(e.testNumbers(number(e.left(), env), number(e.right(), env)));
+        return e.apply(e.left().accept(this, env), e.right().accept(this, env));
     }
-}
 
-class Sum extends Expression {
-    public ArrayList<Term> terms;
+    @Override
+    public Value visit(AST.SumExp e, Env env) {
+        if (e.proven())
+            return Value.of(number(e, env));
+        return e.apply(e.left().accept(this, env), e.right().accept(this, env));
+    }
 
-    public Sum(ArrayList<Term> terms) {
-        this.terms = terms;
+    @Override
+    public Value visit(AST.TermExp e, Env env) {
+        if (e.proven())
+            return Value.of(number(e, env));
+        return e.apply(e.left().accept(this, env), e.right().accept(this, env));
     }
-}
 
-class Term extends Expression {
-    public ArrayList<Power> powers;
+    @Override
+    public Value visit(AST.PowExp e, Env env) {
+        if (e.proven())
+            return Value.of(number(e, env));
+        return e.apply(e.left().accept(this, env), e.right().accept(this, env));
+    }
 
-    public Term(ArrayList<Power> powers) {
-        this.powers = powers;
+    @Override
+    public Value visit(AST.FactorExp e, Env env) {
+        return e.getExpr().accept(this, env);
     }
-}
 
-class Power extends Expression {
-    public Factor base;
-    public Power exponent;
+    @Override
+    public Value visit(AST.GroupExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
 
-    public Power(Factor base, Power exponent) {
-        this.base = base;
-        this.exponent = exponent;
+    @Override
+    public Value visit(AST.UnaryOpExp e, Env env) {
+        Value operand = e.getExpr().accept(this, env);
+        if (e.getOperator().equals("-"))
+            return Operators.neg(operand);
+        throw new RuntimeException("Unknown operator: " + e.getOperator());
     }
-}
 
-class Factor extends Expression {
-    public String value;
+    @Override
+    public Value visit(AST.CallExp e, Env env) {
+        return e.getCall().accept(this, env);
+    }
 
-    public Factor(String value) {
-        this.value = value;
+    @Override
+    public Value visit(AST.Assign dd, Env env) {
+        AST.CallStmt call = dd.getTailCall();
+        if (call != null) {
+            // Leave the call to invoke() unless a lock on the return variable
+            // must check the result; the frame goes away with the call.
+            Value old = ((FrameEnv) env).find(dd.depth(), dd.slot());
+            if (old == null || !old.isLocked()) {
+                Function f = function(call);
+                tailFrame = bind(f, call, env);
+                tailFunction = f;
+                return null;
+            }
+        }
+        if (dd.inLoop() && dd.getType() == null && unboxed(dd.getExpression())) {
+            storeNumber(dd, dd.getIdentifier(), number(dd.getExpression(), env), env);
+            return null;
+        }
+        Value val = dd.getExpression().accept(this, env);
+        store(dd, dd.getIdentifier(), dd.getType(), val, env);
+        return null;
     }
-}
 
-class NumberLiteral extends Expression {
-    public double value;
+    @Override
+    public Value visit(AST.Print dd, Env env) {
+        display(dd.getOutput().accept(this, env));
+        return null;
+    }
 
-    public NumberLiteral(double value) {
-        this.value = value;
+    @Override
+    public Value visit(AST.Input dd, Env env) {
+        String line;
+        try {
+            out.flush();
+            line = reader.readInput(Operators.stripQuotes(dd.getPrompt()));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading input: " + e.getMessage());
+        }
+        store(dd, dd.getIdentifier(), null, Operators.parseInput(line), env);
+        return null;
     }
-}
 
-class Identifier extends Expression {
-    public String name;
+    @Override
+    public Value visit(AST.IfStmt dd, Env env) {
+        if (test(dd.getCondition(), env))
+            return execute(dd.getThenBranch(), env);
+        return execute(dd.getElseBranch(), env);
+    }
 
-    public Identifier(String name) {
-        this.name = name;
+    /**
+     * Counted loop. The bounds are evaluated once and the counter is a Java
+     * int. The variable is bound through storeNumber(), unboxed in its slot,
+     * so a constant is refused and a type-locked variable falls back to
+     * store(), which checks and keeps the lock. After the first binding it
+     * depends on what the Resolver found the body doing with the variable:
+     * <ul>
+     * <li>reading or writing it: every iteration binds the next count
+     * through storeNumber() again, in place;</li>
+     * <li>neither: it is not rebound until the loop ends (or fails), and then
+     * to the value it would have had.</li>
+     * </ul>
+     */
+    @Override
+    public Value visit(AST.LoopStmt dd, Env env) {
+        int start = (int) dd.getStart().accept(this, env).asNumber();
+        int end = (int) dd.getEnd().accept(this, env).asNumber();
+        if (start > end)
+            return null;
+        String name = dd.getIdentifier();
+        List<AST.Statement> body = dd.getBody();
+        storeNumber(dd, name, start, env);
+        int i = start;
+        if (dd.bodyReadsVariable() || dd.bodyWritesVariable()) {
+            while (true) {
+                execute(body, env);
+                if (i == end)
+                    break;
+                storeNumber(dd, name, ++i, env);
+            }
+        } else {
+            try {
+                while (true) {
+                    execute(body, env);
+                    if (i == end)
+                        break;
+                    i++;
+                }
+            } finally {
+                if (i != start)
+                    storeNumber(dd, name, i, env);
+            }
+        }
+        return null;
     }
-}
 
-class Output extends Expression {
-    public String value;
+    @Override
+    public Value visit(AST.CallStmt dd, Env env) {
+        Function f = function(dd);
+        FrameEnv frame = bind(f, dd, env);
+        if (f.memo == null)
+            return invoke(f, frame);
+        Value[] args = frame.arguments(f.arity);
+        Value result = f.memo.get(args);
+        if (result == null) {
+            result = invoke(f, frame);
+            f.memo.put(args, result);
+        }
+        return result;
+    }
+
+    @Override
+    public Value visit(AST.FuncDef dd, Env env) {
+        MemoCache memo = null;
+        if (memoCapacity > 0 && dd.isPure()) {
+            memo = new MemoCache(memoCapacity, memoEviction);
+            memos.put(dd.getName(), memo);
+        }
+        functions[dd.getFunctionIndex()] = new Function(dd, env, memo);
+        return null;
+    }
 
-    public Output(String value) {
-        this.value = value;
+    @Override
+    public Value visit(AST.Rand dd, Env env) {
+        random(dd, dd.getMin().accept(this, env), dd.getMax().accept(this, env), env);
+        return null;
     }
 }
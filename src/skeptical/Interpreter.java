@@ -1,5 +1,7 @@
 package skeptical;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 import skeptical.Env;
 import skeptical.Value;
@@ -8,30 +10,90 @@ import skeptical.AST.*;
 /**
  * This main class implements the Read-Eval-Print-Loop of the interpreter with
  * the help of Reader, Evaluator, and Printer classes. 
+ *
+ * Pass --compile to run programs through the bytecode Compiler instead of
+ * the tree-walking Evaluator; programs the Compiler does not support are
+ * still interpreted. Pass --ir to run them through the Lowerer's register
+ * instructions instead (see IrProgram), with the same fallback.
+ *
+ * Pass --deep to run programs on the Evaluator's explicit stack, for
+ * recursion deeper than the Java stack allows (tail calls never need it).
+ * It implies interpreting.
+ *
+ * Pass --memo or --memo=N to remember up to N results (default 4096) of
+ * each pure function, evicting the least recently used; add --memo-fifo
+ * to evict the oldest instead. Hit rates are printed to standard error
+ * after each run.
+ *
+ * Pass --batch to run script files headlessly instead of starting the
+ * REPL; see BatchRunner. Pass --daemon to serve runs over a Unix domain
+ * socket; see Daemon and Client.
  * 
  * @author hridesh
  *
  */
 public class Interpreter {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			System.exit(BatchRunner.main(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && args[0].equals("--daemon")) {
+			Daemon.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		System.out.println("Type a program to evaluate and press the enter key," +
 							"Press Ctrl + C to exit.");
 		Reader reader = new Reader();
 		Evaluator eval = new Evaluator(reader);
+		Optimizer optimizer = new Optimizer();
+		Compiler compiler = new Compiler();
+		Lowerer lowerer = new Lowerer();
+		boolean deep = Arrays.asList(args).contains("--deep");
+		boolean compile = !deep && Arrays.asList(args).contains("--compile");
+		boolean ir = !deep && !compile && Arrays.asList(args).contains("--ir");
+		eval.setExplicitStack(deep);
+		MemoCache.Eviction eviction = Arrays.asList(args).contains("--memo-fifo")
+				? MemoCache.Eviction.FIFO : MemoCache.Eviction.LRU;
+		for (String arg : args) {
+			if (MemoCache.capacityOption(arg) >= 0)
+				eval.setMemoization(MemoCache.capacityOption(arg), eviction);
+		}
 		Printer printer = new Printer();
 		REPL: while (true) { // Read-Eval-Print-Loop (also known as REPL)
 			Program p = null;
 			try {
 				p = reader.read();
-				if(p._e == null) continue REPL;
+				if(p == null) continue REPL;
+				p = optimizer.optimize(p);
+				if (compile) {
+					try {
+						printer.print(compiler.compile(p).execute(reader, System.out));
+						continue REPL;
+					} catch (UnsupportedOperationException e) {
+						System.err.println("Not compiled (" + e.getMessage() + "), interpreting instead.");
+					}
+				}
+				if (ir) {
+					try {
+						printer.print(lowerer.lower(p).execute(reader, System.out));
+						continue REPL;
+					} catch (UnsupportedOperationException e) {
+						System.err.println("Not lowered (" + e.getMessage() + "), interpreting instead.");
+					}
+				}
 				Value val = eval.valueOf(p);
 				printer.print(val);
+				eval.memoCaches().forEach((name, memo) -> System.err.println("memo " + name + ": " + memo));
 			} catch (Env.LookupException e) {
 				printer.print(e);
+			} catch (EOFException e) {
+				break REPL;
 			} catch (IOException e) {
 				System.out.println("Error reading input:" + e.getMessage());
 			} catch (NullPointerException e) {
 				System.out.println("Error:" + e.getMessage());
+			} catch (RuntimeException e) {
+				printer.print(e);
 			}
 		}
 	}
@@ -0,0 +1,692 @@
+package skeptical;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * A program lowered by the Lowerer to a linear instruction stream, and the
+ * register machine that runs it.
+ *
+ * The code is one flat int array: each instruction is an opcode followed
+ * by its operands, and jumps name the index of their target. Every
+ * function body (and the top level) runs in a frame of registers: its
+ * parameters and locals come first, in the Resolver's slots, followed by
+ * temporaries for intermediate results. Globals live in an array by slot,
+ * as in CompiledProgram. Constants are a pool of Values, with the numeric
+ * ones mirrored in a double array.
+ *
+ * A register is a pair of slots, one in a Value array and one in a double
+ * array. A plain number (not a constant, not type-locked) is kept unboxed
+ * in the double, with the RAW marker in the Value slot; anything else is
+ * the Value itself, and null means unbound. So arithmetic on locals and
+ * temporaries allocates nothing: a Value is made only when a number is
+ * stored in a global, concatenated, or passed to the Operators' slow paths.
+ * (The Evaluator gets much of the same from the JIT's escape analysis,
+ * which can't see through a register array.)
+ *
+ * Besides plain three-address instructions there are superinstructions
+ * for the common sequences that would otherwise dispatch two or three
+ * times: compare-and-branch (JN*), arithmetic with a constant operand
+ * (ADDK through MODK) and the loop step (FORNEXT), which increments the
+ * counter, binds the loop variable and branches back in one go.
+ *
+ * Calls push a heap-allocated frame rather than recursing in Java, so
+ * recursion is as deep as memory allows, up to MAX_DEPTH.
+ */
+public final class IrProgram {
+    // Opcodes, with their operands. r* are registers, k a constant, s a
+    // string, g a global slot, f a function index, t a jump target, and v a
+    // variable: a register if non-negative, else the complement of a global
+    // slot. A lock operand is a string (the AS type) or -1.
+    static final int HALT = 0;      //
+    static final int LOADK = 1;     // rd k
+    static final int MOVE = 2;      // rd rs          copies a local, checking it is bound
+    static final int GETG = 3;      // rd g
+    static final int SETG = 4;      // g rs lock
+    static final int SETL = 5;      // rd rs lock
+    static final int CONST = 6;     // g rs
+    static final int ADD = 7;       // rd ra rb, as are SUB through POW and EQ through GE
+    static final int SUB = 8;
+    static final int MUL = 9;
+    static final int DIV = 10;
+    static final int MOD = 11;
+    static final int POW = 12;
+    static final int OR = 13;       // rd ra t        rd = the truth of ra; jumps to t if true
+    static final int AND = 14;      // rd ra t        the same, but jumps if false
+    static final int EQ = 15;
+    static final int NE = 16;
+    static final int LT = 17;
+    static final int LE = 18;
+    static final int GT = 19;
+    static final int GE = 20;
+    static final int ADDK = 21;     // rd ra k, as are SUBK through MODK
+    static final int SUBK = 22;
+    static final int MULK = 23;
+    static final int DIVK = 24;
+    static final int MODK = 25;
+    static final int NEG = 26;      // rd ra
+    static final int JUMP = 27;     // t
+    static final int JF = 28;       // ra t           jumps if ra is false
+    static final int JNEQ = 29;     // ra rb t        jumps unless ra == rb, and so on
+    static final int JNNE = 30;
+    static final int JNLT = 31;
+    static final int JNLE = 32;
+    static final int JNGT = 33;
+    static final int JNGE = 34;
+    static final int JNEQK = 35;    // ra k t         jumps unless ra == k, and so on
+    static final int JNNEK = 36;
+    static final int JNLTK = 37;
+    static final int JNLEK = 38;
+    static final int JNGTK = 39;
+    static final int JNGEK = 40;
+    static final int CHECKNUM = 41; // ra             fails unless ra is a number
+    static final int FORINIT = 42;  // v ra rb c t    binds v to ra, or jumps to t if ra > rb
+    static final int FORNEXT = 43;  // v c t          steps counter c and jumps back to t
+    static final int PRINT = 44;    // ra
+    static final int INPUT = 45;    // rd s
+    static final int RAND = 46;     // rd ra rb
+    static final int DEFINE = 47;   // f
+    static final int CHECKFN = 48;  // f s n          f (named s) exists and takes n arguments
+    static final int CALL = 49;     // rd f s n r1 ... rn
+    static final int RET = 50;      // v
+
+    /** The deepest nesting of calls a run may reach. */
+    public static final int MAX_DEPTH = 4_000_000;
+
+    private static final int[] NO_COUNTERS = new int[0];
+
+    /** Marks a register whose value is the plain number in its double slot. Never escapes. */
+    private static final Value RAW = new Value(Double.NaN);
+
+    /** A function body, or the top level: where its code starts and the shape of its frame. */
+    static final class Body {
+        final String name;
+        final int arity;
+        final int entry;
+        final int registers;
+        final int counters; // ints for the bounds of the loops it runs
+        final Symbol[] names; // register -> local name, null for temporaries
+        final int result; // the RETURN variable
+
+        Body(String name, int arity, int entry, int registers, int counters, Symbol[] names, int result) {
+            this.name = name;
+            this.arity = arity;
+            this.entry = entry;
+            this.registers = registers;
+            this.counters = counters;
+            this.names = names;
+            this.result = result;
+        }
+
+        /** The name of the local in register r, or null for a temporary. */
+        String name(int r) {
+            Symbol s = names[r];
+            return s == null ? null : s.name();
+        }
+    }
+
+    /** A running call: its body, registers and loop counters, and where its caller resumes. */
+    private static final class Frame {
+        final Body body;
+        final Value[] registers;
+        final double[] numbers; // of the RAW registers
+        final int[] counters;
+        final Frame caller;
+        final int depth;
+        int pc; // of the CALL, while a callee runs
+
+        Frame(Body body, Frame caller) {
+            this.body = body;
+            this.registers = new Value[body.registers];
+            this.numbers = new double[body.registers];
+            this.counters = body.counters == 0 ? NO_COUNTERS : new int[body.counters];
+            this.caller = caller;
+            this.depth = caller == null ? 0 : caller.depth + 1;
+        }
+    }
+
+    private final int[] code;
+    private final Value[] constants;
+    private final double[] numbers; // constants[k].asNumber(), where it is a number
+    private final String[] strings;
+    private final String[] globalNames;
+    private final Body main;
+    private final Body[] bodies; // by function index
+    private final Random random = new Random();
+
+    IrProgram(int[] code, Value[] constants, String[] strings, String[] globalNames, Body main, Body[] bodies) {
+        this.code = code;
+        this.constants = constants;
+        this.numbers = new double[constants.length];
+        for (int k = 0; k < constants.length; k++)
+            numbers[k] = constants[k].isNumber() ? constants[k].asNumber() : Double.NaN;
+        this.strings = strings;
+        this.globalNames = globalNames;
+        this.main = main;
+        this.bodies = bodies;
+    }
+
+    /** The number of ints in the instruction stream. */
+    public int codeLength() {
+        return code.length;
+    }
+
+    /**
+     * Runs the program with fresh globals, the way Evaluator.valueOf does.
+     * Returns null: programs communicate through DISPLAY.
+     */
+    public Value execute(Reader reader, PrintStream out) {
+        return execute(reader, OutputSink.of(out));
+    }
+
+    /** Runs the program with its DISPLAY output going to out, which is flushed when the run ends. */
+    public Value execute(Reader reader, OutputSink out) {
+        try {
+            run(new Value[globalNames.length], new Body[bodies.length], reader, out);
+        } finally {
+            out.flush();
+        }
+        return null;
+    }
+
+    private void run(Value[] globals, Body[] defined, Reader reader, OutputSink out) {
+        final int[] code = this.code;
+        final Value[] constants = this.constants;
+        final double[] numbers = this.numbers;
+        Frame frame = new Frame(main, null);
+        Body body = main;
+        Value[] regs = frame.registers;
+        double[] nums = frame.numbers;
+        int[] counters = frame.counters;
+        int pc = main.entry;
+        while (true) {
+            switch (code[pc]) {
+            case HALT:
+                return;
+            case LOADK: {
+                int d = code[pc + 1], k = code[pc + 2];
+                if (constants[k].isNumber()) {
+                    nums[d] = numbers[k];
+                    regs[d] = RAW;
+                } else {
+                    regs[d] = constants[k];
+                }
+                pc += 3;
+                break;
+            }
+            case MOVE: {
+                int d = code[pc + 1], s = code[pc + 2];
+                regs[d] = bound(regs, s, body);
+                nums[d] = nums[s];
+                pc += 3;
+                break;
+            }
+            case GETG:
+                temp(regs, nums, code[pc + 1], global(globals, code[pc + 2]));
+                pc += 3;
+                break;
+            case SETG: {
+                int g = code[pc + 1];
+                globals[g] = Operators.assign(globals[g], value(regs, nums, code[pc + 2], body),
+                        string(code[pc + 3]), globalNames[g]);
+                pc += 4;
+                break;
+            }
+            case SETL: {
+                int d = code[pc + 1], s = code[pc + 2], lock = code[pc + 3];
+                Value old = regs[d];
+                if (regs[s] == RAW && lock < 0 && (old == RAW || old == null)) {
+                    nums[d] = nums[s];
+                    regs[d] = RAW;
+                } else {
+                    local(regs, nums, d, Operators.assign(old == RAW ? null : old,
+                            value(regs, nums, s, body), string(lock), body.name(d)));
+                }
+                pc += 4;
+                break;
+            }
+            case CONST: {
+                int g = code[pc + 1];
+                if (globals[g] != null)
+                    throw new RuntimeException("Cannot reassign constant: " + globalNames[g]);
+                globals[g] = new Value(value(regs, nums, code[pc + 2], body), true);
+                pc += 3;
+                break;
+            }
+            case ADD: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW) {
+                    nums[d] = nums[a] + nums[b];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.add(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case SUB: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW) {
+                    nums[d] = nums[a] - nums[b];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.sub(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case MUL: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW) {
+                    nums[d] = nums[a] * nums[b];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.mul(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case DIV: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW && nums[b] != 0) {
+                    nums[d] = nums[a] / nums[b];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.div(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case MOD: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW && nums[b] != 0) {
+                    nums[d] = Operators.remainder(nums[a], nums[b]);
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.mod(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case POW: {
+                int d = code[pc + 1], a = code[pc + 2], b = code[pc + 3];
+                if (regs[a] == RAW && regs[b] == RAW) {
+                    nums[d] = Math.pow(nums[a], nums[b]);
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.pow(value(regs, nums, a, body), value(regs, nums, b, body)));
+                }
+                pc += 4;
+                break;
+            }
+            case OR:
+            case AND: {
+                int d = code[pc + 1];
+                boolean b = truth(regs, nums, code[pc + 2], body);
+                nums[d] = b ? 1 : 0;
+                regs[d] = RAW;
+                pc = b == (code[pc] == OR) ? code[pc + 3] : pc + 4;
+                break;
+            }
+            case EQ:
+                truth(regs, nums, code[pc + 1], same(regs, nums, code[pc + 2], code[pc + 3], body));
+                pc += 4;
+                break;
+            case NE:
+                truth(regs, nums, code[pc + 1], !same(regs, nums, code[pc + 2], code[pc + 3], body));
+                pc += 4;
+                break;
+            case LT:
+                truth(regs, nums, code[pc + 1], order(regs, nums, code[pc + 2], code[pc + 3], body) < 0);
+                pc += 4;
+                break;
+            case LE:
+                truth(regs, nums, code[pc + 1], order(regs, nums, code[pc + 2], code[pc + 3], body) <= 0);
+                pc += 4;
+                break;
+            case GT:
+                truth(regs, nums, code[pc + 1], order(regs, nums, code[pc + 2], code[pc + 3], body) > 0);
+                pc += 4;
+                break;
+            case GE:
+                truth(regs, nums, code[pc + 1], order(regs, nums, code[pc + 2], code[pc + 3], body) >= 0);
+                pc += 4;
+                break;
+            case ADDK: {
+                int d = code[pc + 1], a = code[pc + 2], k = code[pc + 3];
+                if (regs[a] == RAW) {
+                    nums[d] = nums[a] + numbers[k];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.add(value(regs, nums, a, body), constants[k]));
+                }
+                pc += 4;
+                break;
+            }
+            case SUBK: {
+                int d = code[pc + 1], a = code[pc + 2], k = code[pc + 3];
+                if (regs[a] == RAW) {
+                    nums[d] = nums[a] - numbers[k];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.sub(value(regs, nums, a, body), constants[k]));
+                }
+                pc += 4;
+                break;
+            }
+            case MULK: {
+                int d = code[pc + 1], a = code[pc + 2], k = code[pc + 3];
+                if (regs[a] == RAW) {
+                    nums[d] = nums[a] * numbers[k];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.mul(value(regs, nums, a, body), constants[k]));
+                }
+                pc += 4;
+                break;
+            }
+            case DIVK: {
+                int d = code[pc + 1], a = code[pc + 2], k = code[pc + 3];
+                if (regs[a] == RAW && numbers[k] != 0) {
+                    nums[d] = nums[a] / numbers[k];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.div(value(regs, nums, a, body), constants[k]));
+                }
+                pc += 4;
+                break;
+            }
+            case MODK: {
+                int d = code[pc + 1], a = code[pc + 2], k = code[pc + 3];
+                if (regs[a] == RAW && numbers[k] != 0) {
+                    nums[d] = Operators.remainder(nums[a], numbers[k]);
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.mod(value(regs, nums, a, body), constants[k]));
+                }
+                pc += 4;
+                break;
+            }
+            case NEG: {
+                int d = code[pc + 1], a = code[pc + 2];
+                if (regs[a] == RAW) {
+                    nums[d] = -nums[a];
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, Operators.neg(value(regs, nums, a, body)));
+                }
+                pc += 3;
+                break;
+            }
+            case JUMP:
+                pc = code[pc + 1];
+                break;
+            case JF:
+                pc = truth(regs, nums, code[pc + 1], body) ? pc + 3 : code[pc + 2];
+                break;
+            case JNEQ:
+                pc = same(regs, nums, code[pc + 1], code[pc + 2], body) ? pc + 4 : code[pc + 3];
+                break;
+            case JNNE:
+                pc = !same(regs, nums, code[pc + 1], code[pc + 2], body) ? pc + 4 : code[pc + 3];
+                break;
+            case JNLT:
+                pc = order(regs, nums, code[pc + 1], code[pc + 2], body) < 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNLE:
+                pc = order(regs, nums, code[pc + 1], code[pc + 2], body) <= 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNGT:
+                pc = order(regs, nums, code[pc + 1], code[pc + 2], body) > 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNGE:
+                pc = order(regs, nums, code[pc + 1], code[pc + 2], body) >= 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNEQK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], true, body) == 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNNEK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], true, body) != 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNLTK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], false, body) < 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNLEK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], false, body) <= 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNGTK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], false, body) > 0 ? pc + 4 : code[pc + 3];
+                break;
+            case JNGEK:
+                pc = compareK(regs, nums, code[pc + 1], code[pc + 2], false, body) >= 0 ? pc + 4 : code[pc + 3];
+                break;
+            case CHECKNUM:
+                number(regs, nums, code[pc + 1], body);
+                pc += 2;
+                break;
+            case FORINIT: {
+                int start = (int) number(regs, nums, code[pc + 2], body);
+                int end = (int) number(regs, nums, code[pc + 3], body);
+                if (start > end) {
+                    pc = code[pc + 5];
+                    break;
+                }
+                int c = code[pc + 4];
+                counters[c] = start;
+                counters[c + 1] = end;
+                store(code[pc + 1], start, regs, nums, globals, body);
+                pc += 6;
+                break;
+            }
+            case FORNEXT: {
+                int c = code[pc + 2];
+                int i = counters[c];
+                if (i == counters[c + 1]) {
+                    pc += 4;
+                    break;
+                }
+                counters[c] = ++i;
+                store(code[pc + 1], i, regs, nums, globals, body);
+                pc = code[pc + 3];
+                break;
+            }
+            case PRINT: {
+                int a = code[pc + 1];
+                if (regs[a] == RAW)
+                    out.display(nums[a]);
+                else
+                    out.display(bound(regs, a, body));
+                pc += 2;
+                break;
+            }
+            case INPUT:
+                temp(regs, nums, code[pc + 1], input(reader, out, strings[code[pc + 2]]));
+                pc += 3;
+                break;
+            case RAND:
+                temp(regs, nums, code[pc + 1], random(value(regs, nums, code[pc + 2], body),
+                        value(regs, nums, code[pc + 3], body)));
+                pc += 4;
+                break;
+            case DEFINE:
+                defined[code[pc + 1]] = bodies[code[pc + 1]];
+                pc += 2;
+                break;
+            case CHECKFN:
+                callee(defined, code[pc + 1], code[pc + 2], code[pc + 3]);
+                pc += 4;
+                break;
+            case CALL: {
+                int n = code[pc + 4];
+                Body f = callee(defined, code[pc + 2], code[pc + 3], n);
+                if (frame.depth == MAX_DEPTH)
+                    throw new RuntimeException("Recursion too deep: more than " + MAX_DEPTH + " nested calls");
+                Frame callee = new Frame(f, frame);
+                for (int i = 0; i < n; i++) {
+                    int s = code[pc + 5 + i];
+                    if (regs[s] == RAW) {
+                        callee.numbers[i] = nums[s];
+                        callee.registers[i] = RAW;
+                    } else {
+                        temp(callee.registers, callee.numbers, i, bound(regs, s, body).plain());
+                    }
+                }
+                frame.pc = pc;
+                frame = callee;
+                body = f;
+                regs = callee.registers;
+                nums = callee.numbers;
+                counters = callee.counters;
+                pc = f.entry;
+                break;
+            }
+            case RET: {
+                int v = code[pc + 1];
+                Value result = v >= 0 ? bound(regs, v, body) : global(globals, ~v);
+                double number = v >= 0 ? nums[v] : 0;
+                frame = frame.caller;
+                body = frame.body;
+                regs = frame.registers;
+                nums = frame.numbers;
+                counters = frame.counters;
+                pc = frame.pc;
+                int d = code[pc + 1];
+                if (result == RAW) {
+                    nums[d] = number;
+                    regs[d] = RAW;
+                } else {
+                    temp(regs, nums, d, result);
+                }
+                pc += 5 + code[pc + 4];
+                break;
+            }
+            default:
+                throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    /** Register r, which may be RAW, checking that it is bound. */
+    private static Value bound(Value[] regs, int r, Body body) {
+        Value v = regs[r];
+        if (v == null)
+            throw new Env.LookupException("No binding found for name: " + body.names[r]);
+        return v;
+    }
+
+    /** The value in register r, boxed if it is RAW. */
+    private static Value value(Value[] regs, double[] nums, int r, Body body) {
+        Value v = bound(regs, r, body);
+        return v == RAW ? Value.of(nums[r]) : v;
+    }
+
+    private static double number(Value[] regs, double[] nums, int r, Body body) {
+        Value v = bound(regs, r, body);
+        return v == RAW ? nums[r] : v.asNumber();
+    }
+
+    private static boolean truth(Value[] regs, double[] nums, int r, Body body) {
+        Value v = bound(regs, r, body);
+        return v == RAW ? nums[r] != 0 : Operators.isTrue(v);
+    }
+
+    /** Whether registers a and b hold equal values, as == compares them. */
+    private static boolean same(Value[] regs, double[] nums, int a, int b, Body body) {
+        if (regs[a] == RAW && regs[b] == RAW)
+            return Double.compare(nums[a], nums[b]) == 0;
+        return value(regs, nums, a, body).equals(value(regs, nums, b, body));
+    }
+
+    /** Orders registers a and b, as < and the like do. */
+    private static int order(Value[] regs, double[] nums, int a, int b, Body body) {
+        if (regs[a] == RAW && regs[b] == RAW)
+            return Double.compare(nums[a], nums[b]);
+        return Operators.compare(value(regs, nums, a, body), value(regs, nums, b, body));
+    }
+
+    /** Compares register a with numeric constant k for ==/!= (equality) or for ordering. */
+    private int compareK(Value[] regs, double[] nums, int a, int k, boolean equality, Body body) {
+        if (regs[a] == RAW)
+            return Double.compare(nums[a], numbers[k]);
+        Value v = bound(regs, a, body);
+        if (v.isNumber())
+            return Double.compare(v.asNumber(), numbers[k]);
+        if (equality)
+            return 1;
+        return Operators.compare(v, constants[k]);
+    }
+
+    /** Puts a value in temporary d, unboxing numbers: temporaries carry no lock. */
+    private static void temp(Value[] regs, double[] nums, int d, Value v) {
+        if (v.isNumber()) {
+            nums[d] = v.asNumber();
+            regs[d] = RAW;
+        } else {
+            regs[d] = v;
+        }
+    }
+
+    /** Puts a value bound by assign() in local d, unboxing it unless it is locked. */
+    private static void local(Value[] regs, double[] nums, int d, Value v) {
+        if (v.isLocked())
+            regs[d] = v;
+        else
+            temp(regs, nums, d, v);
+    }
+
+    /** Puts a comparison's result, 1 or 0, in temporary d. */
+    private static void truth(Value[] regs, double[] nums, int d, boolean b) {
+        nums[d] = b ? 1 : 0;
+        regs[d] = RAW;
+    }
+
+    private Value global(Value[] globals, int g) {
+        Value v = globals[g];
+        if (v == null)
+            throw new Env.LookupException("No binding found for name: " + globalNames[g]);
+        return v;
+    }
+
+    /** Binds variable v to a loop counter, as SET without AS would. */
+    private void store(int v, int i, Value[] regs, double[] nums, Value[] globals, Body body) {
+        if (v < 0) {
+            globals[~v] = Operators.assign(globals[~v], Value.of(i), null, globalNames[~v]);
+        } else if (regs[v] == RAW || regs[v] == null) {
+            nums[v] = i;
+            regs[v] = RAW;
+        } else {
+            local(regs, nums, v, Operators.assign(regs[v], Value.of(i), null, body.name(v)));
+        }
+    }
+
+    private String string(int s) {
+        return s < 0 ? null : strings[s];
+    }
+
+    private Body callee(Body[] defined, int f, int name, int n) {
+        Body callee = f < 0 ? null : defined[f];
+        if (callee == null)
+            throw new Env.LookupException("No function found for name: " + strings[name]);
+        if (n != callee.arity)
+            throw new RuntimeException("Function " + callee.name + " expects "
+                    + callee.arity + " argument(s) but got " + n);
+        return callee;
+    }
+
+    private static Value input(Reader reader, OutputSink out, String prompt) {
+        try {
+            out.flush();
+            return Operators.parseInput(reader.readInput(Operators.stripQuotes(prompt)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading input: " + e.getMessage());
+        }
+    }
+
+    private Value random(Value minValue, Value maxValue) {
+        int min = (int) minValue.asNumber(), max = (int) maxValue.asNumber();
+        if (max < min)
+            throw new RuntimeException("Empty RANDOM range: " + min + " TO " + max);
+        return Value.of(min + random.nextInt(max - min + 1));
+    }
+}
@@ -0,0 +1,555 @@
+package skeptical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static skeptical.IrProgram.*;
+
+/**
+ * Lowers a Program to an IrProgram: a flat stream of register
+ * instructions that runs in one switch loop instead of a visit per node.
+ *
+ * Each expression is lowered to the register that will hold its value. A
+ * local variable is its own register, so reading one costs nothing; globals
+ * are loaded into a temporary, and temporaries are reused stack-wise once a
+ * statement is done with them. Conditions that are comparisons become a
+ * single compare-and-branch, AND and OR become chains of branches that
+ * skip the right operand when the left decides, and a number literal on the right of an
+ * arithmetic operator or a comparison is folded into the instruction (ADDK,
+ * JNLTK and so on).
+ *
+ * Evaluation order matches the Evaluator's, including which error comes
+ * first: a local read is checked when the instruction using it runs, so a
+ * local that is followed by something that may fail or DISPLAY is copied
+ * (MOVE) at the point the Evaluator would have read it.
+ *
+ * Like the Compiler, this does not handle closures or two functions with
+ * the same name: lower() throws UnsupportedOperationException and the
+ * caller should fall back to the Evaluator.
+ */
+public class Lowerer implements AST.Visitor<Integer> {
+    private int[] code = new int[256];
+    private int length;
+    private AST.FuncDef current; // function being lowered, null for the top level
+    private int nextRegister, maxRegisters;
+    private int nextCounter, maxCounters;
+    private final Map<Symbol, Integer> globalSlots = new HashMap<>();
+    private final List<String> globalNames = new ArrayList<>();
+    private final Map<Object, Integer> constantSlots = new HashMap<>();
+    private final List<Value> constants = new ArrayList<>();
+    private final Map<String, Integer> stringSlots = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final Map<Symbol, AST.FuncDef> functions = new HashMap<>();
+    private final List<AST.FuncDef> functionOrder = new ArrayList<>();
+
+    public IrProgram lower(AST.Program p) {
+        Resolver resolver = new Resolver();
+        resolver.resolve(p);
+        new TypeChecker().check(p);
+        code = new int[256];
+        length = 0;
+        globalSlots.clear();
+        globalNames.clear();
+        constantSlots.clear();
+        constants.clear();
+        stringSlots.clear();
+        strings.clear();
+        functions.clear();
+        functionOrder.clear();
+        collectFunctions(p.dynamicDivision().getStatements());
+
+        begin(null);
+        p.accept(this, null);
+        emit(HALT);
+        IrProgram.Body main = new IrProgram.Body("", 0, 0, maxRegisters, maxCounters, new Symbol[maxRegisters], -1);
+        IrProgram.Body[] bodies = new IrProgram.Body[resolver.functionCount()];
+        for (AST.FuncDef f : functionOrder)
+            bodies[f.getFunctionIndex()] = lowerFunction(f);
+        return new IrProgram(Arrays.copyOf(code, length), constants.toArray(new Value[0]),
+                strings.toArray(new String[0]), globalNames.toArray(new String[0]), main, bodies);
+    }
+
+    private void collectFunctions(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            if (s instanceof AST.FuncDef f) {
+                if (functions.put(f.symbol(), f) != null)
+                    throw new UnsupportedOperationException("function " + f.getName() + " is defined twice");
+                functionOrder.add(f);
+                collectFunctions(f.getBody());
+            } else if (s instanceof AST.IfStmt i) {
+                collectFunctions(i.getThenBranch());
+                collectFunctions(i.getElseBranch());
+            } else if (s instanceof AST.LoopStmt l) {
+                collectFunctions(l.getBody());
+            }
+        }
+    }
+
+    private void begin(AST.FuncDef f) {
+        current = f;
+        nextRegister = maxRegisters = f == null ? 0 : f.getFrameSize();
+        nextCounter = maxCounters = 0;
+    }
+
+    private IrProgram.Body lowerFunction(AST.FuncDef f) {
+        begin(f);
+        int entry = length;
+        statements(f.getBody());
+        int result = address(f.getReturnAddress().depth(), f.getReturnAddress().slot(), f.getReturnSymbol());
+        emit(RET, result);
+        return new IrProgram.Body(f.getName(), f.getParameters().size(), entry, maxRegisters, maxCounters,
+                Arrays.copyOf(f.getFrameNames(), maxRegisters), result);
+    }
+
+    private void emit(int... words) {
+        if (length + words.length > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+        System.arraycopy(words, 0, code, length, words.length);
+        length += words.length;
+    }
+
+    /** Points the jump target operand at index operand to the next instruction. */
+    private void patch(int operand) {
+        code[operand] = length;
+    }
+
+    private void patch(List<Integer> operands) {
+        for (int operand : operands)
+            patch(operand);
+    }
+
+    private int temp() {
+        int r = nextRegister++;
+        maxRegisters = Math.max(maxRegisters, nextRegister);
+        return r;
+    }
+
+    private int globalSlot(Symbol name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = globalNames.size();
+            globalSlots.put(name, slot);
+            globalNames.add(name.name());
+        }
+        return slot;
+    }
+
+    private int constant(Object key, Value v) {
+        Integer slot = constantSlots.get(key);
+        if (slot == null) {
+            slot = constants.size();
+            constantSlots.put(key, slot);
+            constants.add(v);
+        }
+        return slot;
+    }
+
+    private int string(String s) {
+        if (s == null)
+            return -1;
+        Integer slot = stringSlots.get(s);
+        if (slot == null) {
+            slot = strings.size();
+            stringSlots.put(s, slot);
+            strings.add(s);
+        }
+        return slot;
+    }
+
+    /** A variable operand: its register if local, the complement of its slot if global. */
+    private int address(int depth, int slot, Symbol name) {
+        if (depth == AST.GLOBAL)
+            return ~globalSlot(name);
+        if (depth != 0)
+            throw new UnsupportedOperationException("closure over " + name + " in " + current.getName());
+        return slot;
+    }
+
+    /** Binds a variable to the value in register src, enforcing constants and type locks. */
+    private void store(AST.Addressed node, int src, String typeLock) {
+        int v = address(node.depth(), node.slot(), node.symbol());
+        if (v < 0)
+            emit(SETG, ~v, src, string(typeLock));
+        else
+            emit(SETL, v, src, string(typeLock));
+    }
+
+    private static boolean isLocal(AST.Exp e) {
+        return e instanceof AST.IdExp id && id.depth() == 0;
+    }
+
+    /** Whether evaluating e can neither fail nor have an effect before a local it is paired with is read. */
+    private static boolean simple(AST.Exp e) {
+        return e instanceof AST.LiteralExp || isLocal(e);
+    }
+
+    /**
+     * Lowers an operand that is followed by more operands, at least one of
+     * which is not simple. A local is then copied now, so an unbound one
+     * fails before whatever follows runs.
+     */
+    private int operand(AST.Exp e, boolean effectsFollow) {
+        int r = e.accept(this, null);
+        if (effectsFollow && isLocal(e)) {
+            int t = temp();
+            emit(MOVE, t, r);
+            return t;
+        }
+        return r;
+    }
+
+    private Integer binary(AST.BinaryExp e, int opcode, int constantOpcode) {
+        int mark = nextRegister;
+        int a = operand(e.left(), !simple(e.right()));
+        if (constantOpcode >= 0 && e.right() instanceof AST.NumExp n) {
+            int k = constant(n.value(), Value.of(n.value()));
+            nextRegister = mark;
+            int d = temp();
+            emit(constantOpcode, d, a, k);
+            return d;
+        }
+        int b = e.right().accept(this, null);
+        nextRegister = mark;
+        int d = temp();
+        emit(opcode, d, a, b);
+        return d;
+    }
+
+    private static AST.Exp unwrap(AST.Exp e) {
+        while (true) {
+            if (e instanceof AST.GroupExp g)
+                e = g.getExpr();
+            else if (e instanceof AST.FactorExp f)
+                e = f.getExpr();
+            else
+                return e;
+        }
+    }
+
+    /**
+     * OR (opcode OR) or AND (AND) in a value: the left operand's truth is
+     * the result if it decides, else the right one's.
+     */
+    private Integer logical(AST.BinaryExp e, int opcode) {
+        int mark = nextRegister;
+        int a = e.left().accept(this, null);
+        nextRegister = mark;
+        int d = temp();
+        emit(opcode, d, a, -1);
+        int decided = length - 1;
+        emit(opcode, d, e.right().accept(this, null), -1);
+        patch(decided);
+        patch(length - 1);
+        nextRegister = d + 1;
+        return d;
+    }
+
+    /** Emits the jumps taken when condition is false, adding the indices of their target operands to exits. */
+    private void jumpUnless(AST.Exp condition, List<Integer> exits) {
+        int mark = nextRegister;
+        AST.Exp e = unwrap(condition);
+        if (e instanceof AST.ConjExp c) {
+            jumpUnless(c.left(), exits);
+            jumpUnless(c.right(), exits);
+        } else if (e instanceof AST.DisjExp d) {
+            int a = d.left().accept(this, null);
+            nextRegister = mark;
+            emit(OR, temp(), a, -1);
+            int holds = length - 1;
+            nextRegister = mark;
+            jumpUnless(d.right(), exits);
+            patch(holds);
+        } else if (e instanceof AST.CompExp c) {
+            int opcode = switch (c.operator()) {
+            case "==" -> JNEQ;
+            case "!=" -> JNNE;
+            case "<" -> JNLT;
+            case "<=" -> JNLE;
+            case ">" -> JNGT;
+            case ">=" -> JNGE;
+            default -> throw new RuntimeException("Unknown operator: " + c.operator());
+            };
+            int a = operand(c.left(), !simple(c.right()));
+            if (c.right() instanceof AST.NumExp n)
+                emit(opcode + (JNEQK - JNEQ), a, constant(n.value(), Value.of(n.value())), -1);
+            else
+                emit(opcode, a, c.right().accept(this, null), -1);
+            exits.add(length - 1);
+        } else {
+            emit(JF, e.accept(this, null), -1);
+            exits.add(length - 1);
+        }
+        nextRegister = mark;
+    }
+
+    private void statements(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            int mark = nextRegister;
+            s.accept(this, null);
+            nextRegister = mark;
+        }
+    }
+
+    @Override
+    public Integer visit(AST.Program p, Env env) {
+        p.staticDivision().accept(this, env);
+        p.dynamicDivision().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.StaDiv d, Env env) {
+        for (AST.StaDecl decl : d.getStatements())
+            decl.accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.DynDiv d, Env env) {
+        statements(d.getStatements());
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.ProgId sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Auth sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Date sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Const sd, Env env) {
+        int mark = nextRegister;
+        emit(CONST, globalSlot(sd.symbol()), sd.value().accept(this, env));
+        nextRegister = mark;
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.IdExp e, Env env) {
+        int v = address(e.depth(), e.slot(), e.symbol());
+        if (v >= 0)
+            return v;
+        int t = temp();
+        emit(GETG, t, ~v);
+        return t;
+    }
+
+    @Override
+    public Integer visit(AST.NumExp e, Env env) {
+        int t = temp();
+        emit(LOADK, t, constant(e.value(), Value.of(e.value())));
+        return t;
+    }
+
+    @Override
+    public Integer visit(AST.StrExp e, Env env) {
+        int t = temp();
+        emit(LOADK, t, constant("\"" + e.value(), new Value(e.value())));
+        return t;
+    }
+
+    @Override
+    public Integer visit(AST.DisjExp e, Env env) {
+        return logical(e, OR);
+    }
+
+    @Override
+    public Integer visit(AST.ConjExp e, Env env) {
+        return logical(e, AND);
+    }
+
+    @Override
+    public Integer visit(AST.CompExp e, Env env) {
+        switch (e.operator()) {
+        case "==":
+            return binary(e, EQ, -1);
+        case "!=":
+            return binary(e, NE, -1);
+        case "<":
+            return binary(e, LT, -1);
+        case "<=":
+            return binary(e, LE, -1);
+        case ">":
+            return binary(e, GT, -1);
+        case ">=":
+            return binary(e, GE, -1);
+        default:
+            throw new RuntimeException("Unknown operator: " + e.operator());
+        }
+    }
+
+    @Override
+    public Integer visit(AST.SumExp e, Env env) {
+        return e.operator().equals("+") ? binary(e, ADD, ADDK) : binary(e, SUB, SUBK);
+    }
+
+    @Override
+    public Integer visit(AST.TermExp e, Env env) {
+        switch (e.operator()) {
+        case "*":
+            return binary(e, MUL, MULK);
+        case "/":
+            return binary(e, DIV, DIVK);
+        case "MOD":
+            return binary(e, MOD, MODK);
+        default:
+            throw new RuntimeException("Unknown operator: " + e.operator());
+        }
+    }
+
+    @Override
+    public Integer visit(AST.PowExp e, Env env) {
+        return binary(e, POW, -1);
+    }
+
+    @Override
+    public Integer visit(AST.FactorExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Integer visit(AST.GroupExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Integer visit(AST.UnaryOpExp e, Env env) {
+        if (!e.getOperator().equals("-"))
+            throw new RuntimeException("Unknown operator: " + e.getOperator());
+        int mark = nextRegister;
+        int a = e.getExpr().accept(this, env);
+        nextRegister = mark;
+        int d = temp();
+        emit(NEG, d, a);
+        return d;
+    }
+
+    @Override
+    public Integer visit(AST.CallExp e, Env env) {
+        return call(e.getCall());
+    }
+
+    /**
+     * Lowers a CALL into a register holding its result. CALL checks the
+     * function before reading its arguments; if evaluating them may fail
+     * or have effects, a CHECKFN does so first, as the Evaluator would.
+     */
+    private int call(AST.CallStmt c) {
+        int mark = nextRegister;
+        List<AST.Exp> args = c.getArguments();
+        int f = c.getFunctionIndex(), name = string(c.getIdentifier()), n = args.size();
+        int lastEffect = -1;
+        for (int i = 0; i < n; i++) {
+            if (!simple(args.get(i)))
+                lastEffect = i;
+        }
+        if (lastEffect >= 0)
+            emit(CHECKFN, f, name, n);
+        int[] call = new int[5 + n];
+        call[0] = CALL;
+        call[2] = f;
+        call[3] = name;
+        call[4] = n;
+        for (int i = 0; i < n; i++)
+            call[5 + i] = operand(args.get(i), i < lastEffect);
+        nextRegister = mark;
+        call[1] = temp();
+        emit(call);
+        return call[1];
+    }
+
+    @Override
+    public Integer visit(AST.Assign dd, Env env) {
+        store(dd, dd.getExpression().accept(this, env), dd.getType());
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Print dd, Env env) {
+        emit(PRINT, dd.getOutput().accept(this, env));
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Input dd, Env env) {
+        int t = temp();
+        emit(INPUT, t, string(dd.getPrompt()));
+        store(dd, t, null);
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.IfStmt dd, Env env) {
+        List<Integer> otherwise = new ArrayList<>();
+        jumpUnless(dd.getCondition(), otherwise);
+        statements(dd.getThenBranch());
+        if (dd.getElseBranch() == null || dd.getElseBranch().isEmpty()) {
+            patch(otherwise);
+            return null;
+        }
+        emit(JUMP, -1);
+        int end = length - 1;
+        patch(otherwise);
+        statements(dd.getElseBranch());
+        patch(end);
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.LoopStmt dd, Env env) {
+        int a = dd.getStart().accept(this, env);
+        if (!simple(dd.getEnd()))
+            emit(CHECKNUM, a); // the Evaluator converts the start before evaluating the end
+        int b = dd.getEnd().accept(this, env);
+        int counter = nextCounter;
+        nextCounter += 2;
+        maxCounters = Math.max(maxCounters, nextCounter);
+        int v = address(dd.depth(), dd.slot(), dd.symbol());
+        emit(FORINIT, v, a, b, counter, -1);
+        int exit = length - 1;
+        int top = length;
+        statements(dd.getBody());
+        emit(FORNEXT, v, counter, top);
+        patch(exit);
+        nextCounter -= 2;
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.CallStmt dd, Env env) {
+        call(dd);
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.FuncDef dd, Env env) {
+        emit(DEFINE, dd.getFunctionIndex());
+        return null;
+    }
+
+    @Override
+    public Integer visit(AST.Rand dd, Env env) {
+        int a = operand(dd.getMin(), !simple(dd.getMax()));
+        int b = dd.getMax().accept(this, env);
+        int t = temp();
+        emit(RAND, t, a, b);
+        store(dd, t, null);
+        return null;
+    }
+}
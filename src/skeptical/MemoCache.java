@@ -0,0 +1,101 @@
+package skeptical;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the results of one pure function (see Resolver) by its
+ * arguments, so that calling it again with equal arguments skips the body.
+ * Arguments are compared with Value.equals, so 2 and 2.0 are the same
+ * argument but 2 and "2" are not. The cache holds at most a fixed number
+ * of results; when full it evicts either the least recently used one or
+ * the oldest one.
+ *
+ * A cache belongs to one Function of one Evaluator run and is used by one
+ * thread, so it takes no locks.
+ */
+public class MemoCache {
+    /** Which result to drop when the cache is full. */
+    public enum Eviction {
+        /** The least recently used: hits keep a result. */
+        LRU,
+        /** The least recently added: a plain bound on the size, with cheaper hits. */
+        FIFO
+    }
+
+    /** Results kept per function when --memo gives no number. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Map<List<Value>, Value> results;
+    private final int capacity;
+    private long hits;
+    private long misses;
+
+    public MemoCache(int capacity, Eviction eviction) {
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<List<Value>, Value>(16, 0.75f, eviction == Eviction.LRU) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Value>, Value> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Parses the command-line option "--memo" or "--memo=capacity", returning
+     * the capacity, or -1 if arg is not that option.
+     */
+    static int capacityOption(String arg) {
+        if (arg.equals("--memo"))
+            return DEFAULT_CAPACITY;
+        if (arg.startsWith("--memo="))
+            return Integer.parseInt(arg.substring("--memo=".length()));
+        return -1;
+    }
+
+    /** Returns the result remembered for these arguments, or null. */
+    public Value get(Value[] arguments) {
+        Value v = results.get(Arrays.asList(arguments));
+        if (v != null)
+            hits++;
+        else
+            misses++;
+        return v;
+    }
+
+    public void put(Value[] arguments, Value result) {
+        results.put(Arrays.asList(arguments), result);
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /** The fraction of lookups that were hits, or 0 before the first lookup. */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MemoCache[%d/%d results, %d hits, %d misses, %.1f%% hit rate]",
+                results.size(), capacity, hits, misses, 100 * hitRate());
+    }
+}
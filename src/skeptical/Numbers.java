@@ -0,0 +1,130 @@
+package skeptical;
+
+/**
+ * Formats numbers for DISPLAY and string concatenation. Integral values
+ * print as integers ("5", not "5.0"). Other values between 1e-3 and 1e15
+ * print in fixed point with the fewest decimals that read back as the same
+ * double, so 0.1 prints as "0.1" and 1/3 as "0.3333333333333333". Values
+ * outside that range, NaN and the infinities print as Double.toString
+ * prints them.
+ *
+ * The shortest decimals are found by scaling: a double d equals the decimal
+ * m / 10^k exactly when (double) m / 10^k == d, since both m (below 2^53)
+ * and 10^k (up to 10^22) are exact doubles and division rounds correctly,
+ * just as parsing does. Trying k = 0, 1, 2, ... finds the shortest such
+ * decimal without the tables of a full Ryu implementation, and without
+ * allocating.
+ */
+public final class Numbers {
+    private static final double FIXED_MIN = 1e-3;
+    private static final double FIXED_MAX = 1e15;
+    private static final double EXACT_MAX = 0x1p53; // longs below this are exact doubles
+    private static final int MAX_DECIMALS = 17;
+
+    private static final double[] POW10 = new double[MAX_DECIMALS + 1];
+    private static final long[] LONG_POW10 = new long[MAX_DECIMALS + 1];
+    static {
+        double p = 1;
+        long q = 1;
+        for (int i = 0; i <= MAX_DECIMALS; i++, p *= 10, q *= 10) {
+            POW10[i] = p;
+            LONG_POW10[i] = q;
+        }
+    }
+
+    // Strings of the small integers that Value.of shares, so DISPLAYing a
+    // loop counter allocates nothing.
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final String[] CACHE = new String[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for (int i = CACHE_LOW; i <= CACHE_HIGH; i++)
+            CACHE[i - CACHE_LOW] = Integer.toString(i);
+    }
+
+    /** The longest text this class produces, in bytes: that of Double.toString. */
+    public static final int MAX_LENGTH = 26;
+
+    private Numbers() { }
+
+    public static String toString(double d) {
+        int i = (int) d;
+        if (i == d && i >= CACHE_LOW && i <= CACHE_HIGH && (i != 0 || Double.doubleToRawLongBits(d) == 0L))
+            return CACHE[i - CACHE_LOW];
+        return append(new StringBuilder(MAX_LENGTH), d).toString();
+    }
+
+    /** Appends d to sb in DISPLAY form, and returns sb. */
+    public static StringBuilder append(StringBuilder sb, double d) {
+        int k = decimals(d);
+        if (k < 0)
+            return sb.append(Double.toString(d));
+        if (d < 0 || d == 0 && Double.doubleToRawLongBits(d) != 0L)
+            sb.append('-');
+        long m = Math.round(Math.abs(d) * POW10[k]);
+        sb.append(m / LONG_POW10[k]);
+        if (k > 0) {
+            sb.append('.');
+            long fraction = m % LONG_POW10[k];
+            for (int i = k - 1; i > 0 && fraction < LONG_POW10[i]; i--)
+                sb.append('0');
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    /**
+     * Writes d in DISPLAY form into buf, which has at least MAX_LENGTH bytes
+     * from pos, as ASCII. Returns the position after the last byte written.
+     */
+    public static int write(double d, byte[] buf, int pos) {
+        int k = decimals(d);
+        if (k < 0) {
+            String s = Double.toString(d);
+            for (int i = 0; i < s.length(); i++)
+                buf[pos++] = (byte) s.charAt(i);
+            return pos;
+        }
+        if (d < 0 || d == 0 && Double.doubleToRawLongBits(d) != 0L)
+            buf[pos++] = '-';
+        long m = Math.round(Math.abs(d) * POW10[k]);
+        int digits = Math.max(digitCount(m), k + 1); // at least "0." before the decimals
+        int end = pos + digits + (k > 0 ? 1 : 0);
+        int i = end;
+        for (int n = 0; n < digits; n++) {
+            if (n == k && k > 0)
+                buf[--i] = '.';
+            buf[--i] = (byte) ('0' + m % 10);
+            m /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the fewest decimals k with which d prints exactly in fixed
+     * point, or -1 if d is to be printed by Double.toString.
+     */
+    static int decimals(double d) {
+        double a = Math.abs(d);
+        if (a == 0)
+            return 0;
+        if (!(a >= FIXED_MIN && a < FIXED_MAX))
+            return -1; // also NaN
+        for (int k = 0; k <= MAX_DECIMALS; k++) {
+            double scaled = a * POW10[k];
+            if (scaled >= EXACT_MAX)
+                return -1;
+            long m = Math.round(scaled);
+            if (m / POW10[k] == a)
+                return k;
+        }
+        return -1;
+    }
+
+    private static int digitCount(long m) {
+        int n = 1;
+        while (n <= MAX_DECIMALS && m >= LONG_POW10[n])
+            n++;
+        return n;
+    }
+}
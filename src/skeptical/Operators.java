@@ -0,0 +1,235 @@
+package skeptical;
+
+/**
+ * The semantics of Skeptical's operators and variable binding rules, shared
+ * by every execution engine so that interpreted and compiled programs agree.
+ *
+ * A comparison yields Value.TRUE or Value.FALSE, which are the shared
+ * numbers 1 and 0; a condition holds for any non-zero number or non-empty
+ * string. AND and OR evaluate their right operand only when the left one
+ * does not decide the result, so each engine implements them itself.
+ */
+public final class Operators {
+    private Operators() { }
+
+    public static boolean isTrue(Value v) {
+        if (v == Value.TRUE)
+            return true;
+        if (v == Value.FALSE)
+            return false;
+        return v.isNumber() ? v.asNumber() != 0 : !v.asString().isEmpty();
+    }
+
+    public static Value truth(boolean b) {
+        return b ? Value.TRUE : Value.FALSE;
+    }
+
+    public static Value add(Value left, Value right) {
+        if (left.isNumber() && right.isNumber())
+            return Value.of(left.asNumber() + right.asNumber());
+        return Value.concat(left, right);
+    }
+
+    public static Value sub(Value left, Value right) {
+        return Value.of(left.asNumber() - right.asNumber());
+    }
+
+    public static Value mul(Value left, Value right) {
+        return Value.of(left.asNumber() * right.asNumber());
+    }
+
+    public static Value div(Value left, Value right) {
+        double divisor = right.asNumber();
+        if (divisor == 0)
+            throw new RuntimeException("Division by zero");
+        return Value.of(left.asNumber() / divisor);
+    }
+
+    /**
+     * The remainder of a truncating division, as Java's % on doubles; see
+     * remainder.
+     */
+    public static Value mod(Value left, Value right) {
+        double divisor = right.asNumber();
+        if (divisor == 0)
+            throw new RuntimeException("Division by zero");
+        return Value.of(remainder(left.asNumber(), divisor));
+    }
+
+    /**
+     * dividend % divisor, bit for bit, for a non-zero divisor. The JIT
+     * compiles % on doubles to a call into the C library, which costs ten
+     * times the arithmetic around it and more where the call switches
+     * between AVX and SSE code. Integral operands (below 2^53, where longs
+     * and doubles agree) take a long remainder instead, and others the
+     * shift-and-subtract division of fmod (as in musl), which is exact:
+     * its zero gets the sign of the dividend, as with %.
+     */
+    public static double remainder(double dividend, double divisor) {
+        long a = (long) dividend, b = (long) divisor;
+        if (a == dividend && b == divisor && Math.abs(dividend) < 0x1p53 && Math.abs(divisor) < 0x1p53) {
+            long r = a % b;
+            return r == 0 ? Math.copySign(0.0, dividend) : r;
+        }
+        return fmod(dividend, divisor);
+    }
+
+    private static double fmod(double x, double y) {
+        long ux = Double.doubleToRawLongBits(x), uy = Double.doubleToRawLongBits(y);
+        int ex = (int) (ux >>> 52) & 0x7ff, ey = (int) (uy >>> 52) & 0x7ff;
+        long sign = ux & 0x8000000000000000L;
+        if (uy << 1 == 0 || Double.isNaN(y) || ex == 0x7ff)
+            return (x * y) / (x * y);
+        if (Long.compareUnsigned(ux << 1, uy << 1) <= 0)
+            return ux << 1 == uy << 1 ? 0 * x : x;
+        // the significands, with subnormals normalized
+        if (ex == 0) {
+            for (long i = ux << 12; i >= 0; i <<= 1)
+                ex--;
+            ux <<= -ex + 1;
+        } else {
+            ux = ux & (-1L >>> 12) | 1L << 52;
+        }
+        if (ey == 0) {
+            for (long i = uy << 12; i >= 0; i <<= 1)
+                ey--;
+            uy <<= -ey + 1;
+        } else {
+            uy = uy & (-1L >>> 12) | 1L << 52;
+        }
+        for (; ex > ey; ex--) {
+            long i = ux - uy;
+            if (i >= 0) {
+                if (i == 0)
+                    return 0 * x;
+                ux = i;
+            }
+            ux <<= 1;
+        }
+        long i = ux - uy;
+        if (i >= 0) {
+            if (i == 0)
+                return 0 * x;
+            ux = i;
+        }
+        for (; ux >>> 52 == 0; ux <<= 1)
+            ex--;
+        if (ex > 0)
+            ux = ux - (1L << 52) | (long) ex << 52;
+        else
+            ux >>>= -ex + 1;
+        return Double.longBitsToDouble(ux | sign);
+    }
+
+    public static Value pow(Value base, Value exponent) {
+        return Value.of(Math.pow(base.asNumber(), exponent.asNumber()));
+    }
+
+    public static Value neg(Value operand) {
+        return Value.of(-operand.asNumber());
+    }
+
+    public static Value eq(Value left, Value right) {
+        return truth(left.equals(right));
+    }
+
+    public static Value ne(Value left, Value right) {
+        return truth(!left.equals(right));
+    }
+
+    public static Value lt(Value left, Value right) {
+        return truth(compare(left, right) < 0);
+    }
+
+    public static Value le(Value left, Value right) {
+        return truth(compare(left, right) <= 0);
+    }
+
+    public static Value gt(Value left, Value right) {
+        return truth(compare(left, right) > 0);
+    }
+
+    public static Value ge(Value left, Value right) {
+        return truth(compare(left, right) >= 0);
+    }
+
+    /** Orders two numbers or two strings; mixing them is a type error. */
+    public static int compare(Value left, Value right) {
+        if (left.isNumber() && right.isNumber())
+            return Double.compare(left.asNumber(), right.asNumber());
+        if (!left.isNumber() && !right.isNumber())
+            return left.asString().compareTo(right.asString());
+        throw new RuntimeException("Type error: cannot compare a number with a string");
+    }
+
+    /** Applies a comparison operator given by its source spelling. */
+    public static Value compare(String operator, Value left, Value right) {
+        switch (operator) {
+        case "==":
+            return eq(left, right);
+        case "!=":
+            return ne(left, right);
+        case "<":
+            return lt(left, right);
+        case "<=":
+            return le(left, right);
+        case ">":
+            return gt(left, right);
+        case ">=":
+            return ge(left, right);
+        default:
+            throw new RuntimeException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Checks that val may be bound to a variable whose current value is old
+     * (null if unbound), enforcing constants and type locks, and returns the
+     * value to store. typeLock is the AS clause of a SET, or null.
+     */
+    public static Value assign(Value old, Value val, String typeLock, String name) {
+        val = val.plain();
+        if (old != null) {
+            if (old.isConstant())
+                throw new RuntimeException("Cannot reassign constant: " + name);
+            if (old.isLocked()) {
+                if (old.isNumber() != val.isNumber())
+                    throw new RuntimeException("Type error: " + name + " is locked to "
+                            + (old.isNumber() ? "NUMBER" : "STRING"));
+                val = val.lock();
+            }
+        }
+        if (typeLock != null) {
+            if (val.isNumber() != lockedToNumber(typeLock))
+                throw new RuntimeException("Type error: " + name + " is not a "
+                        + (val.isNumber() ? "STRING" : "NUMBER"));
+            val = val.lock();
+        }
+        return val;
+    }
+
+    /** Returns whether an AS clause names NUMBER (true) or STRING (false). */
+    public static boolean lockedToNumber(String typeLock) {
+        String type = typeLock.replace("\"", "").toUpperCase();
+        if (type.equals("NUMBER"))
+            return true;
+        if (type.equals("STRING"))
+            return false;
+        throw new RuntimeException("Unknown type: " + typeLock);
+    }
+
+    /** Converts a PROMPT reply to a number if it reads as one. */
+    public static Value parseInput(String line) {
+        try {
+            return Value.of(Double.parseDouble(line.trim()));
+        } catch (NumberFormatException e) {
+            return new Value(line);
+        }
+    }
+
+    public static String stripQuotes(String literal) {
+        if (literal.length() >= 2 && literal.startsWith("\"") && literal.endsWith("\""))
+            return literal.substring(1, literal.length() - 1);
+        return literal;
+    }
+}
@@ -0,0 +1,279 @@
+package skeptical;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * AST-to-AST optimization pass, run before a program is evaluated or
+ * compiled. It
+ * <ul>
+ * <li>propagates FIX constants whose value folds to a literal into the
+ * IdExp sites that read them as globals,</li>
+ * <li>folds operators whose operands are all NumExp/StrExp literals, and
+ * AND/OR whose left operand is a literal that decides the result,</li>
+ * <li>strips GroupExp and FactorExp wrappers, and</li>
+ * <li>replaces an IF whose condition folds to a literal with the branch
+ * that would run.</li>
+ * </ul>
+ * Folding applies the operator nodes themselves (or Operators), so folded
+ * results are exactly what evaluation would produce; an operation that
+ * would fail at runtime (a type error, division by zero) is left in place
+ * to fail there.
+ *
+ * The result shares no node that a later pass annotates with the program
+ * it was made from: every Addressed node in it is new. The Resolver gives
+ * the optimized tree other addresses than the original (a removed IF can
+ * take a local with it), so a shared node would get both, and a program
+ * from the ParseCache is optimized by every run.
+ */
+public class Optimizer implements AST.Visitor<AST.ASTNode> {
+
+    private final Map<Symbol, AST.LiteralExp> constants = new HashMap<>();
+    private final Set<Symbol> declared = new HashSet<>();
+
+    public AST.Program optimize(AST.Program p) {
+        constants.clear();
+        declared.clear();
+        new Resolver().resolve(p); // tells globals apart from locals that shadow a constant
+        return (AST.Program) p.accept(this, null);
+    }
+
+    private AST.Exp exp(AST.Exp e) {
+        return (AST.Exp) e.accept(this, null);
+    }
+
+    private List<AST.Exp> exps(List<AST.Exp> es) {
+        List<AST.Exp> result = new ArrayList<>(es.size());
+        for (AST.Exp e : es)
+            result.add(exp(e));
+        return result;
+    }
+
+    private List<AST.Statement> statements(List<AST.Statement> statements) {
+        if (statements == null)
+            return null;
+        List<AST.Statement> result = new ArrayList<>(statements.size());
+        for (AST.Statement s : statements) {
+            AST.Statement optimized = (AST.Statement) s.accept(this, null);
+            if (optimized instanceof AST.IfStmt i && i.getCondition() instanceof AST.LiteralExp cond) {
+                List<AST.Statement> taken = Operators.isTrue(literalValue(cond)) ? i.getThenBranch() : i.getElseBranch();
+                if (taken != null)
+                    result.addAll(taken);
+            } else {
+                result.add(optimized);
+            }
+        }
+        return result;
+    }
+
+    private static Value literalValue(AST.LiteralExp e) {
+        if (e instanceof AST.NumExp n)
+            return Value.of(n.value());
+        return new Value(((AST.StrExp) e).value());
+    }
+
+    private static AST.LiteralExp literal(Value v) {
+        if (v.isNumber())
+            return new AST.NumExp(v.asNumber());
+        return new AST.StrExp(v.asString());
+    }
+
+    /** Rebuilds a binary node from optimized operands, folding it if both are literals. */
+    private AST.Exp binary(AST.BinaryExp e, BinaryOperator<Value> fold, BinaryOperator<AST.Exp> rebuild) {
+        AST.Exp left = exp(e.left());
+        AST.Exp right = exp(e.right());
+        if (left instanceof AST.LiteralExp l && right instanceof AST.LiteralExp r) {
+            try {
+                return literal(fold.apply(literalValue(l), literalValue(r)));
+            } catch (RuntimeException ex) {
+                // leave the error to be reported when the program runs
+            }
+        }
+        return rebuild.apply(left, right);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Program p, Env env) {
+        AST.StaDiv s = (AST.StaDiv) p.staticDivision().accept(this, env);
+        AST.DynDiv d = (AST.DynDiv) p.dynamicDivision().accept(this, env);
+        return new AST.Program(s, d);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.StaDiv d, Env env) {
+        List<AST.StaDecl> decls = new ArrayList<>();
+        for (AST.StaDecl decl : d.getStatements())
+            decls.add((AST.StaDecl) decl.accept(this, env));
+        return new AST.StaDiv(decls);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.DynDiv d, Env env) {
+        return new AST.DynDiv(statements(d.getStatements()));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.ProgId sd, Env env) {
+        return sd;
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Auth sd, Env env) {
+        return sd;
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Date sd, Env env) {
+        return sd;
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Const sd, Env env) {
+        AST.Exp value = exp(sd.value());
+        if (!declared.add(sd.symbol()))
+            constants.remove(sd.symbol()); // declared twice: fails at runtime, don't propagate
+        else if (value instanceof AST.LiteralExp l)
+            constants.put(sd.symbol(), l);
+        return new AST.Const(sd.id(), value);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.IdExp e, Env env) {
+        if (e.depth() == AST.GLOBAL) {
+            AST.LiteralExp constant = constants.get(e.symbol());
+            if (constant != null)
+                return constant;
+        }
+        return new AST.IdExp(e.symbol());
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.NumExp e, Env env) {
+        return e;
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.StrExp e, Env env) {
+        return e;
+    }
+
+    /**
+     * Rebuilds OR (or = true) or AND. A literal left operand that decides
+     * the result folds it whatever the right operand is, since the right
+     * operand would not be evaluated.
+     */
+    private AST.Exp logical(AST.BinaryExp e, boolean or, BinaryOperator<AST.Exp> rebuild) {
+        AST.Exp left = exp(e.left());
+        if (left instanceof AST.LiteralExp l && Operators.isTrue(literalValue(l)) == or)
+            return literal(Operators.truth(or));
+        AST.Exp right = exp(e.right());
+        if (left instanceof AST.LiteralExp && right instanceof AST.LiteralExp r)
+            return literal(Operators.truth(Operators.isTrue(literalValue(r))));
+        return rebuild.apply(left, right);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.DisjExp e, Env env) {
+        return logical(e, true, AST.DisjExp::new);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.ConjExp e, Env env) {
+        return logical(e, false, AST.ConjExp::new);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.CompExp e, Env env) {
+        return binary(e, e::apply, (l, r) -> AST.CompExp.of(l, e.operator(), r));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.SumExp e, Env env) {
+        return binary(e, e::apply, (l, r) -> AST.SumExp.of(l, e.operator(), r));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.TermExp e, Env env) {
+        return binary(e, e::apply, (l, r) -> AST.TermExp.of(l, e.operator(), r));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.PowExp e, Env env) {
+        return binary(e, Operators::pow, AST.PowExp::new);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.FactorExp e, Env env) {
+        return exp(e.getExpr());
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.GroupExp e, Env env) {
+        return exp(e.getExpr());
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.UnaryOpExp e, Env env) {
+        AST.Exp operand = exp(e.getExpr());
+        if (e.getOperator().equals("-") && operand instanceof AST.NumExp n)
+            return new AST.NumExp(-n.value());
+        return new AST.UnaryOpExp(e.getOperator(), operand);
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.CallExp e, Env env) {
+        return new AST.CallExp((AST.CallStmt) e.getCall().accept(this, env));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Assign dd, Env env) {
+        AST.Assign a = new AST.Assign();
+        a.setIdentifier(dd.getIdentifier());
+        a.setExpression(exp(dd.getExpression()));
+        a.setType(dd.getType());
+        return a;
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Print dd, Env env) {
+        return new AST.Print(exp(dd.getOutput()));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Input dd, Env env) {
+        return new AST.Input(dd.symbol(), dd.getPrompt());
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.IfStmt dd, Env env) {
+        return new AST.IfStmt(exp(dd.getCondition()), statements(dd.getThenBranch()),
+                statements(dd.getElseBranch()));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.LoopStmt dd, Env env) {
+        return new AST.LoopStmt(dd.getIdentifier(), exp(dd.getStart()), exp(dd.getEnd()),
+                statements(dd.getBody()));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.CallStmt dd, Env env) {
+        return new AST.CallStmt(dd.symbol(), exps(dd.getArguments()));
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.FuncDef dd, Env env) {
+        return new AST.FuncDef(dd.symbol(), dd.getParameters(), statements(dd.getBody()),
+                dd.getReturnSymbol());
+    }
+
+    @Override
+    public AST.ASTNode visit(AST.Rand dd, Env env) {
+        return new AST.Rand(dd.getIdentifier(), exp(dd.getMin()), exp(dd.getMax()));
+    }
+}
@@ -0,0 +1,156 @@
+package skeptical;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where DISPLAY writes. Lines are encoded into a direct ByteBuffer and
+ * written to a channel in large blocks instead of line by line, so a
+ * program that displays millions of lines makes a few thousand writes
+ * rather than millions. The buffer is flushed:
+ * <ul>
+ * <li>when it is full,</li>
+ * <li>before a PROMPT, so the program's output appears before the
+ * question,</li>
+ * <li>when a run ends, normally or with an error.</li>
+ * </ul>
+ *
+ * ASCII text and numbers are encoded straight into the buffer (see
+ * Numbers); other text goes through the charset's encoder.
+ *
+ * A sink is used by one run at a time and takes no locks.
+ */
+public class OutputSink implements Flushable {
+    /** The buffer size unless one is given. */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final Flushable downstream; // flushed after the channel, or null
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+    private final boolean asciiCompatible;
+    private final byte[] digits = new byte[Numbers.MAX_LENGTH];
+
+    public OutputSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY, Charset.defaultCharset(), null);
+    }
+
+    public OutputSink(WritableByteChannel channel, int capacity) {
+        this(channel, capacity, Charset.defaultCharset(), null);
+    }
+
+    private OutputSink(WritableByteChannel channel, int capacity, Charset charset, Flushable downstream) {
+        this.channel = channel;
+        this.downstream = downstream;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, 64));
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        String probe = "\n09AZaz .";
+        this.asciiCompatible = probe.equals(new String(probe.getBytes(charset), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * A sink that writes through a PrintStream, for output that is
+     * interleaved with the stream's other users (the REPL's prompts and
+     * results, the batch runner's error messages).
+     */
+    public static OutputSink of(PrintStream out) {
+        return new OutputSink(Channels.newChannel(out), DEFAULT_CAPACITY, Charset.defaultCharset(), out);
+    }
+
+    /** Writes a value and a line separator, as DISPLAY does. */
+    public void display(Value v) {
+        if (v.isNumber())
+            putNumber(v.asNumber());
+        else
+            putString(v.asString());
+        put(NEWLINE);
+    }
+
+    /** Writes a number and a line separator, without boxing it in a Value first. */
+    public void display(double d) {
+        putNumber(d);
+        put(NEWLINE);
+    }
+
+    /** Writes whatever is buffered to the channel. */
+    @Override
+    public void flush() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+            if (downstream != null)
+                downstream.flush();
+        } catch (IOException e) {
+            buffer.clear();
+            throw new RuntimeException("Error writing output: " + e.getMessage());
+        }
+    }
+
+    /** Flushes, then closes the channel. */
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing output: " + e.getMessage());
+            }
+        }
+    }
+
+    private void putNumber(double d) {
+        put(digits, 0, Numbers.write(d, digits, 0));
+    }
+
+    private void putString(String s) {
+        int n = s.length();
+        if (asciiCompatible && n <= buffer.capacity()) {
+            int i = 0;
+            while (i < n && s.charAt(i) < 0x80)
+                i++;
+            if (i == n) {
+                if (buffer.remaining() < n)
+                    flush();
+                for (i = 0; i < n; i++)
+                    buffer.put((byte) s.charAt(i));
+                return;
+            }
+        }
+        encode(s);
+    }
+
+    private void encode(String s) {
+        CharBuffer chars = CharBuffer.wrap(s);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow())
+            flush();
+        while (encoder.flush(buffer).isOverflow())
+            flush();
+    }
+
+    private void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    private void put(byte[] bytes, int offset, int length) {
+        if (buffer.remaining() < length)
+            flush();
+        buffer.put(bytes, offset, length);
+    }
+}
@@ -0,0 +1,107 @@
+package skeptical;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caches parsed programs so that re-running an unchanged file skips the
+ * lexer and parser. Entries are keyed by path and validated against a
+ * SHA-256 digest of the file's content, so an edited file is re-parsed
+ * even if its timestamp did not move. The cache holds at most a fixed
+ * number of programs and evicts the least recently used one.
+ *
+ * A file is loaded once per lookup (see Reader.load) and the same buffer is
+ * both digested and, on a miss, handed to the parser.
+ *
+ * Cached programs are shared between runs, which may be concurrent (see
+ * Daemon), so a run must not execute a cached tree itself: it runs what
+ * the Optimizer builds from it, a new tree with no Addressed node in
+ * common. The only pass that touches the cached tree is the Optimizer's
+ * own Resolver, which writes the same annotations into it on every run.
+ */
+public class ParseCache {
+    private static final class Entry {
+        final byte[] digest;
+        final AST.Program program;
+
+        Entry(byte[] digest, AST.Program program) {
+            this.digest = digest;
+            this.program = program;
+        }
+    }
+
+    private final Function<ByteBuffer, AST.Program> parser;
+    private final Map<Path, Entry> entries;
+    private long hits;
+    private long misses;
+
+    public ParseCache(Function<ByteBuffer, AST.Program> parser, int capacity) {
+        this.parser = parser;
+        this.entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the parsed program in a file, parsing it only if it is new or has changed. */
+    public AST.Program get(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        ByteBuffer content = Reader.load(key);
+        byte[] digest = digest(content);
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && Arrays.equals(e.digest, digest)) {
+                hits++;
+                return e.program;
+            }
+            misses++;
+        }
+        AST.Program program = parser.apply(content);
+        synchronized (this) {
+            entries.put(key, new Entry(digest, program));
+        }
+        return program;
+    }
+
+    private static byte[] digest(ByteBuffer content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(content.duplicate());
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK ships SHA-256
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ParseCache[" + entries.size() + " programs, " + hits + " hits, " + misses + " misses]";
+    }
+}
@@ -0,0 +1,87 @@
+package skeptical;
+
+import java.util.ArrayDeque;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import skeptical.parser.skepticalLexer;
+import skeptical.parser.skepticalParser;
+
+/**
+ * Keeps lexer/parser pairs between parses so that a REPL line does not pay
+ * for building a new lexer, token stream and parser each time. Pairs are
+ * rewound with setInputStream/setTokenStream. The ATN and its DFA cache are
+ * static in the generated classes, so every pair, pooled or not, learns
+ * from every parse that came before it.
+ *
+ * Parsing is two-stage: a first attempt uses SLL prediction and bails out
+ * on the first error without reporting it. Only if that fails is the input
+ * parsed again with full LL prediction and the normal error listener, so a
+ * real syntax error is reported exactly as before. SLL is enough for almost
+ * every valid program and is considerably cheaper.
+ */
+final class ParserPool {
+    private static final class Pair {
+        final skepticalLexer lexer = new skepticalLexer(null);
+        final skepticalParser parser = new skepticalParser(null);
+
+        Pair(ANTLRErrorListener errors) {
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(errors);
+            parser.setBuildParseTree(false); // the actions build the AST; the tree is unused
+        }
+
+        AST.Program parse(CharStream input, ANTLRErrorListener errors) {
+            lexer.setInputStream(input);
+            // A fresh token stream: the 4.5 runtime's setTokenSource does not
+            // clear the stream's end-of-file flag, so it can't be rewound.
+            parser.setTokenStream(new CommonTokenStream(lexer));
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            try {
+                return parser.program().ast;
+            } catch (ParseCancellationException e) {
+                parser.reset();
+                parser.addErrorListener(errors);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                return parser.program().ast;
+            }
+        }
+    }
+
+    private final ArrayDeque<Pair> idle = new ArrayDeque<>();
+    private final int capacity;
+    private final ANTLRErrorListener errors;
+
+    ParserPool(int capacity, ANTLRErrorListener errors) {
+        this.capacity = capacity;
+        this.errors = errors;
+    }
+
+    AST.Program parse(CharStream input) {
+        Pair p;
+        synchronized (this) {
+            p = idle.poll();
+        }
+        if (p == null)
+            p = new Pair(errors);
+        try {
+            return p.parse(input, errors);
+        } finally {
+            p.lexer.setInputStream(null); // don't pin the source text while idle
+            p.parser.setTokenStream(null);
+            synchronized (this) {
+                if (idle.size() < capacity)
+                    idle.push(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package skeptical;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the outcome of running a program at the REPL.
+ */
+public class Printer {
+	private final PrintStream out;
+
+	public Printer() {
+		this(System.out);
+	}
+
+	public Printer(PrintStream out) {
+		this.out = out;
+	}
+
+	public void print(Value v) {
+		if (v != null)
+			out.println(v.toString());
+	}
+
+	public void print(Exception e) {
+		out.println("Error: " + e.getMessage());
+	}
+}
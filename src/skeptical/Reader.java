@@ -1,56 +1,176 @@
 package skeptical;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.FileReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
-import skeptical.ast.Program;
-import skeptical.parser.SkepticalLexer;
-import skeptical.parser.SkepticalParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import skeptical.AST.Program;
 
 public class Reader {
 
+    private static final int CACHED_PROGRAMS = 64;
+    /** Files at least this large are mapped rather than read into the heap. */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    private static final ParserPool PARSERS =
+            new ParserPool(Runtime.getRuntime().availableProcessors(), SyntaxErrorListener.INSTANCE);
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final ParseCache cache;
+
+    public Reader() {
+        this(new BufferedReader(new InputStreamReader(System.in)), System.out);
+    }
+
+    /** A reader that takes input from in and writes prompts to out. */
+    public Reader(BufferedReader in, PrintStream out) {
+        this(in, out, newCache(CACHED_PROGRAMS));
+    }
+
+    /** A reader that shares a parse cache, e.g. with other connections to a daemon. */
+    public Reader(BufferedReader in, PrintStream out, ParseCache cache) {
+        this.in = in;
+        this.out = out;
+        this.cache = cache;
+    }
+
+    /** Returns an empty parse cache that holds up to capacity programs. */
+    public static ParseCache newCache(int capacity) {
+        return new ParseCache(bytes -> parse(decode(bytes)), capacity);
+    }
+
+    /**
+     * Reads and parses the next program typed at the prompt. Returns null
+     * for a blank line and throws EOFException once input is exhausted.
+     * Programs loaded with "run" come from the parse cache.
+     */
     public Program read() throws IOException {
-        String programText = readNextProgram();
-        return parse(programText);
+        out.print("$ ");
+        String input = in.readLine();
+        if (input == null)
+            throw new EOFException();
+        if (input.startsWith("run "))
+            return load(input.substring(4));
+        if (input.isBlank())
+            return null;
+        return parse(input);
+    }
+
+    /**
+     * Returns the program in a file, through the parse cache. Relative names
+     * are looked up in the examples directory, as "run" does.
+     */
+    public Program load(String name) throws IOException {
+        Path file = Paths.get(name);
+        return cache.get(file.isAbsolute() ? file : Paths.get(getProgramDirectory() + name));
+    }
+
+    public ParseCache cache() {
+        return cache;
     }
 
     public Program parse(String programText) {
-        SkepticalLexer lexer = new SkepticalLexer(new ANTLRInputStream(programText));
-        SkepticalParser parser = new SkepticalParser(new CommonTokenStream(lexer));
-        return parser.program().ast;
+        return parse(new ANTLRInputStream(programText));
+    }
+
+    /** Parses a source file without going through an intermediate String. */
+    public Program parse(Path file) throws IOException {
+        return parse(decode(load(file)));
+    }
+
+    private static Program parse(ANTLRInputStream input) {
+        return PARSERS.parse(input);
+    }
+
+    /** Prints a PROMPT message and reads the user's reply. */
+    public String readInput(String prompt) throws IOException {
+        out.print(prompt);
+        out.flush();
+        String line = in.readLine();
+        if (line == null)
+            throw new EOFException();
+        return line;
     }
 
     public static String readFile(String fileName) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            StringBuilder sb = new StringBuilder();
-            String line = br.readLine();
-            while (line != null) {
-                sb.append(line);
-                sb.append(System.lineSeparator());
-                line = br.readLine();
-            }
-            return sb.toString();
+        return decode(load(Paths.get(fileName))).toString();
+    }
+
+    /**
+     * Returns the bytes of a file, positioned at zero. Large files are
+     * memory-mapped so their content is never copied onto the heap; small
+     * ones are read in one go, since mapping costs more than it saves there.
+     */
+    static ByteBuffer load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File too large: " + file);
+            if (size >= MAP_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+                ;
+            return bytes.flip();
         }
     }
 
-    private String readNextProgram() throws IOException {
-        BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-        System.out.print("$ ");
-        String input = br.readLine();
-        return runFile(input);
+    /**
+     * Decodes source bytes in the platform charset straight into the char
+     * array that ANTLR lexes from. Line endings are kept as they are; the
+     * lexer accepts both LF and CRLF.
+     */
+    static ANTLRInputStream decode(ByteBuffer bytes) {
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = bytes.duplicate();
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte()));
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow())
+            result = decoder.flush(out);
+        if (!result.isUnderflow()) {
+            try {
+                result.throwException(); // cannot overflow: out holds maxCharsPerByte per byte
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return new ANTLRInputStream(out.array(), out.position());
     }
 
     protected String getProgramDirectory() {
         return "build" + File.separator + "skeptical" + File.separator + "examples" + File.separator;
     }
 
-    private String runFile(String input) throws IOException {
-        if (input.startsWith("run ")) {
-            input = readFile(getProgramDirectory() + input.substring(4));
+    /** Turns ANTLR's reported syntax errors into exceptions instead of console noise. */
+    private static class SyntaxErrorListener extends BaseErrorListener {
+        static final SyntaxErrorListener INSTANCE = new SyntaxErrorListener();
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                int charPositionInLine, String msg, RecognitionException e) {
+            throw new RuntimeException("Syntax error at line " + line + ":" + charPositionInLine + " " + msg);
         }
-        return input;
     }
 }
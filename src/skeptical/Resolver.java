@@ -0,0 +1,478 @@
+package skeptical;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static skeptical.AST.GLOBAL;
+
+/**
+ * Lexical addressing pass. Walks a Program once before evaluation and gives
+ * every variable reference a (depth, slot) address, so the evaluator can
+ * read array-backed frames by index instead of searching by name.
+ *
+ * Scoping follows the language's Python heritage: names at the top level of
+ * the dynamic division are globals and stay in the GlobalEnv (depth GLOBAL);
+ * inside a FUNCTION, parameters and every name the body assigns (SET, START,
+ * PROMPT, RANDOM) are locals of that function's frame. Reads of other names
+ * find the nearest enclosing function that binds them, or fall back to the
+ * GlobalEnv.
+ *
+ * Functions are numbered: every name the program defines with FUNCTION
+ * gets an index in a function table, and each CALL records the index of
+ * the name it calls (or -1 if the program defines no such function), so
+ * calls don't look functions up by name.
+ *
+ * A SET of a function's return variable to a CALL, as the last thing the
+ * function does, is marked as a tail call (see Evaluator).
+ *
+ * It also records, for each START loop, whether the body may read or write
+ * the loop variable, so the Evaluator can skip rebinding it. The check is
+ * by name and conservative: any use of the name counts, and so does any
+ * CALL, since the function may read the variable as a global.
+ *
+ * Finally it marks pure functions, whose result depends only on their
+ * arguments: the body reads nothing but its own locals and FIX constants,
+ * has no DISPLAY, PROMPT or RANDOM, defines no functions, and calls only
+ * pure functions. A function name defined more than once is never pure,
+ * since which definition a CALL reaches can change while the program runs.
+ */
+public class Resolver implements AST.Visitor<Void> {
+
+    private static class Scope {
+        final Scope enclosing;
+        final Map<Symbol, Integer> slots = new HashMap<>();
+        final List<Symbol> names = new ArrayList<>();
+
+        Scope(Scope enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        void declare(Symbol name) {
+            if (!slots.containsKey(name)) {
+                slots.put(name, names.size());
+                names.add(name);
+            }
+        }
+    }
+
+    /** A loop being resolved and what its body has been seen to do with its variable. */
+    private static class LoopUse {
+        final Symbol name;
+        boolean reads, writes;
+
+        LoopUse(Symbol name) {
+            this.name = name;
+        }
+    }
+
+    /** A function being resolved and what its body has been seen to depend on. */
+    private static class FunctionUse {
+        final AST.FuncDef def;
+        final Set<Integer> calls = new HashSet<>();
+        boolean impure;
+
+        FunctionUse(AST.FuncDef def) {
+            this.def = def;
+        }
+    }
+
+    private Scope scope; // null while resolving top-level code
+    private final ArrayDeque<LoopUse> loops = new ArrayDeque<>();
+    private int loopDepth; // STARTs enclosing the statement being resolved, in its own body
+    private final Map<Symbol, Integer> functions = new HashMap<>();
+    private final Set<Symbol> constants = new HashSet<>();
+    private final ArrayDeque<FunctionUse> bodies = new ArrayDeque<>(); // innermost first
+    private final List<FunctionUse> definitions = new ArrayList<>();
+
+    public AST.Program resolve(AST.Program p) {
+        scope = null;
+        loops.clear();
+        loopDepth = 0;
+        functions.clear();
+        constants.clear();
+        bodies.clear();
+        definitions.clear();
+        numberFunctions(p.dynamicDivision().getStatements());
+        p.accept(this, null);
+        markPure();
+        return p;
+    }
+
+    /** Records that the function being resolved, if any, depends on more than its arguments. */
+    private void impure() {
+        FunctionUse f = bodies.peek();
+        if (f != null)
+            f.impure = true;
+    }
+
+    /** Records a read of name at depth, which only locals and constants keep pure. */
+    private void read(Symbol name, int depth) {
+        if (depth > 0 || depth == GLOBAL && !constants.contains(name))
+            impure();
+    }
+
+    /**
+     * Marks the functions that are pure themselves and call only pure
+     * functions. Starts from all of them and drops callers of impure ones
+     * until nothing changes, so recursive functions can be pure.
+     */
+    private void markPure() {
+        boolean[] pure = new boolean[functions.size()];
+        int[] defined = new int[functions.size()];
+        Arrays.fill(pure, true);
+        for (FunctionUse f : definitions)
+            defined[f.def.getFunctionIndex()]++;
+        for (FunctionUse f : definitions) {
+            if (f.impure || defined[f.def.getFunctionIndex()] > 1)
+                pure[f.def.getFunctionIndex()] = false;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionUse f : definitions) {
+                int index = f.def.getFunctionIndex();
+                if (!pure[index])
+                    continue;
+                for (int callee : f.calls) {
+                    if (!pure[callee]) {
+                        pure[index] = false;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        for (FunctionUse f : definitions)
+            f.def.setPure(pure[f.def.getFunctionIndex()]);
+    }
+
+    private void used(Symbol name, boolean write) {
+        for (LoopUse l : loops) {
+            if (l.name == name) {
+                if (write)
+                    l.writes = true;
+                else
+                    l.reads = true;
+            }
+        }
+    }
+
+    private void bind(AST.Addressed node) {
+        Symbol name = node.symbol();
+        int depth = depthOf(name);
+        node.address().set(depth, depth == GLOBAL ? -1 : slotOf(name, depth));
+    }
+
+    /** Returns how many frames up name is bound, or GLOBAL. */
+    private int depthOf(Symbol name) {
+        int depth = 0;
+        for (Scope sc = scope; sc != null; sc = sc.enclosing, depth++) {
+            if (sc.slots.containsKey(name))
+                return depth;
+        }
+        return GLOBAL;
+    }
+
+    private int slotOf(Symbol name, int depth) {
+        Scope sc = scope;
+        for (; depth > 0; depth--)
+            sc = sc.enclosing;
+        return sc.slots.get(name);
+    }
+
+    private void resolveAll(List<? extends AST.ASTNode> nodes) {
+        if (nodes == null)
+            return;
+        for (AST.ASTNode n : nodes)
+            n.accept(this, null);
+    }
+
+    /** The size of the function table for the program last resolved. */
+    public int functionCount() {
+        return functions.size();
+    }
+
+    /** Gives each function name defined in statements, at any nesting, an index. */
+    private void numberFunctions(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            if (s instanceof AST.FuncDef f) {
+                functions.putIfAbsent(f.symbol(), functions.size());
+                numberFunctions(f.getBody());
+            } else if (s instanceof AST.LoopStmt l)
+                numberFunctions(l.getBody());
+            else if (s instanceof AST.IfStmt i) {
+                numberFunctions(i.getThenBranch());
+                numberFunctions(i.getElseBranch());
+            }
+        }
+    }
+
+    /**
+     * Marks "SET ret TO CALL ..." when it is the last statement of a function
+     * body, directly or as the last statement of a branch of a final IF.
+     * Nothing runs after such a SET except returning ret, so the call's
+     * result can be returned without keeping the caller's frame.
+     */
+    private static void markTailCalls(List<AST.Statement> statements, Symbol ret) {
+        if (statements == null || statements.isEmpty())
+            return;
+        AST.Statement last = statements.get(statements.size() - 1);
+        if (last instanceof AST.IfStmt i) {
+            markTailCalls(i.getThenBranch(), ret);
+            markTailCalls(i.getElseBranch(), ret);
+        } else if (last instanceof AST.Assign a && a.getType() == null && a.symbol() == ret) {
+            AST.Exp e = a.getExpression();
+            while (e instanceof AST.GroupExp || e instanceof AST.FactorExp)
+                e = e instanceof AST.GroupExp g ? g.getExpr() : ((AST.FactorExp) e).getExpr();
+            if (e instanceof AST.CallExp c)
+                a.setTailCall(c.getCall());
+        }
+    }
+
+    /** Declares every name that statements assign, without entering nested functions. */
+    private void declareLocals(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            if (s instanceof AST.Assign a)
+                scope.declare(a.symbol());
+            else if (s instanceof AST.LoopStmt l) {
+                scope.declare(l.symbol());
+                declareLocals(l.getBody());
+            } else if (s instanceof AST.Input i)
+                scope.declare(i.symbol());
+            else if (s instanceof AST.Rand r)
+                scope.declare(r.symbol());
+            else if (s instanceof AST.IfStmt f) {
+                declareLocals(f.getThenBranch());
+                declareLocals(f.getElseBranch());
+            }
+        }
+    }
+
+    @Override
+    public Void visit(AST.Program p, Env env) {
+        p.staticDivision().accept(this, env);
+        p.dynamicDivision().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.StaDiv d, Env env) {
+        resolveAll(d.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.DynDiv d, Env env) {
+        resolveAll(d.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.ProgId sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Auth sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Date sd, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Const sd, Env env) {
+        sd.value().accept(this, env);
+        constants.add(sd.symbol());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.IdExp e, Env env) {
+        used(e.symbol(), false);
+        bind(e);
+        read(e.symbol(), e.depth());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.NumExp e, Env env) {
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.StrExp e, Env env) {
+        return null;
+    }
+
+    private Void visitBinary(AST.BinaryExp e, Env env) {
+        e.left().accept(this, env);
+        e.right().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.DisjExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.ConjExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.CompExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.SumExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.TermExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.PowExp e, Env env) {
+        return visitBinary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.FactorExp e, Env env) {
+        e.getExpr().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.GroupExp e, Env env) {
+        e.getExpr().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.UnaryOpExp e, Env env) {
+        e.getExpr().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.CallExp e, Env env) {
+        e.getCall().accept(this, env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Assign dd, Env env) {
+        dd.getExpression().accept(this, env);
+        used(dd.symbol(), true);
+        bind(dd);
+        dd.setInLoop(loopDepth > 0);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Print dd, Env env) {
+        dd.getOutput().accept(this, env);
+        impure();
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Input dd, Env env) {
+        impure();
+        used(dd.symbol(), true);
+        bind(dd);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.IfStmt dd, Env env) {
+        dd.getCondition().accept(this, env);
+        resolveAll(dd.getThenBranch());
+        resolveAll(dd.getElseBranch());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.LoopStmt dd, Env env) {
+        dd.getStart().accept(this, env);
+        dd.getEnd().accept(this, env);
+        used(dd.symbol(), true);
+        bind(dd);
+        LoopUse use = new LoopUse(dd.symbol());
+        loops.push(use);
+        if (!bodies.isEmpty())
+            bodies.peek().def.setHasLoops(true);
+        loopDepth++;
+        resolveAll(dd.getBody());
+        loopDepth--;
+        loops.pop();
+        dd.setBodyAccess(use.reads, use.writes);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.CallStmt dd, Env env) {
+        for (LoopUse l : loops)
+            l.reads = true;
+        dd.setFunctionIndex(functions.getOrDefault(dd.symbol(), -1));
+        if (dd.getFunctionIndex() < 0)
+            impure();
+        else if (!bodies.isEmpty())
+            bodies.peek().calls.add(dd.getFunctionIndex());
+        resolveAll(dd.getArguments());
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.FuncDef dd, Env env) {
+        dd.setFunctionIndex(functions.get(dd.symbol()));
+        impure(); // defining a function changes the function table
+        FunctionUse use = new FunctionUse(dd);
+        definitions.add(use);
+        bodies.push(use);
+        Scope saved = scope;
+        scope = new Scope(saved);
+        for (Symbol param : dd.getParameters())
+            scope.declare(param);
+        declareLocals(dd.getBody());
+        int savedLoopDepth = loopDepth;
+        loopDepth = 0;
+        resolveAll(dd.getBody());
+        loopDepth = savedLoopDepth;
+        markTailCalls(dd.getBody(), dd.getReturnSymbol());
+        dd.setFrameNames(scope.names.toArray(new Symbol[0]));
+        int depth = depthOf(dd.getReturnSymbol());
+        dd.getReturnAddress().set(depth, depth == GLOBAL ? -1 : slotOf(dd.getReturnSymbol(), depth));
+        read(dd.getReturnSymbol(), depth);
+        scope = saved;
+        bodies.pop();
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Rand dd, Env env) {
+        impure();
+        dd.getMin().accept(this, env);
+        dd.getMax().accept(this, env);
+        used(dd.symbol(), true);
+        bind(dd);
+        return null;
+    }
+}
@@ -0,0 +1,475 @@
+package skeptical;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import skeptical.Env.FrameEnv;
+
+/**
+ * Explicit-stack mode of the Evaluator, for recursion deeper than the Java
+ * stack allows. Nodes that may run a CALL are evaluated step by step: each
+ * is a Task on a heap-allocated stack, which it leaves only once its
+ * children (pushed above it) have finished, and expression results are
+ * passed on a separate value stack. Everything that cannot run a CALL is
+ * handed to the Evaluator and evaluated recursively as usual, since its
+ * depth is bounded by the program text.
+ *
+ * Binding, operators and error messages are the Evaluator's own, so both
+ * modes behave the same; only the Java stack depth differs.
+ */
+final class StackEvaluator implements AST.Visitor<Void> {
+
+    /** Finds whether evaluating a node may run a CALL. Defining a FUNCTION doesn't. */
+    private static final class CallFinder implements AST.Visitor<Boolean> {
+        static final CallFinder INSTANCE = new CallFinder();
+
+        static boolean find(AST.ASTNode node) {
+            return node.accept(INSTANCE, null);
+        }
+
+        private boolean any(List<? extends AST.ASTNode> nodes) {
+            if (nodes != null)
+                for (AST.ASTNode n : nodes)
+                    if (n.accept(this, null))
+                        return true;
+            return false;
+        }
+
+        private boolean either(AST.ASTNode a, AST.ASTNode b) {
+            return a.accept(this, null) || b.accept(this, null);
+        }
+
+        @Override public Boolean visit(AST.Program p, Env env) { return either(p.staticDivision(), p.dynamicDivision()); }
+        @Override public Boolean visit(AST.StaDiv d, Env env) { return any(d.getStatements()); }
+        @Override public Boolean visit(AST.DynDiv d, Env env) { return any(d.getStatements()); }
+        @Override public Boolean visit(AST.ProgId sd, Env env) { return false; }
+        @Override public Boolean visit(AST.Auth sd, Env env) { return false; }
+        @Override public Boolean visit(AST.Date sd, Env env) { return false; }
+        @Override public Boolean visit(AST.Const sd, Env env) { return sd.value().accept(this, env); }
+        @Override public Boolean visit(AST.IdExp e, Env env) { return false; }
+        @Override public Boolean visit(AST.NumExp e, Env env) { return false; }
+        @Override public Boolean visit(AST.StrExp e, Env env) { return false; }
+        @Override public Boolean visit(AST.DisjExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.ConjExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.CompExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.SumExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.TermExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.PowExp e, Env env) { return either(e.left(), e.right()); }
+        @Override public Boolean visit(AST.FactorExp e, Env env) { return e.getExpr().accept(this, env); }
+        @Override public Boolean visit(AST.GroupExp e, Env env) { return e.getExpr().accept(this, env); }
+        @Override public Boolean visit(AST.UnaryOpExp e, Env env) { return e.getExpr().accept(this, env); }
+        @Override public Boolean visit(AST.CallExp e, Env env) { return true; }
+        @Override public Boolean visit(AST.Assign dd, Env env) { return dd.getExpression().accept(this, env); }
+        @Override public Boolean visit(AST.Print dd, Env env) { return dd.getOutput().accept(this, env); }
+        @Override public Boolean visit(AST.Input dd, Env env) { return false; }
+        @Override public Boolean visit(AST.IfStmt dd, Env env) {
+            return dd.getCondition().accept(this, env) || any(dd.getThenBranch()) || any(dd.getElseBranch());
+        }
+        @Override public Boolean visit(AST.LoopStmt dd, Env env) {
+            return either(dd.getStart(), dd.getEnd()) || any(dd.getBody());
+        }
+        @Override public Boolean visit(AST.CallStmt dd, Env env) { return true; }
+        @Override public Boolean visit(AST.FuncDef dd, Env env) { return false; }
+        @Override public Boolean visit(AST.Rand dd, Env env) { return either(dd.getMin(), dd.getMax()); }
+    }
+
+    /** A node being evaluated, or a statement list being run when node is null. */
+    private static final class Task {
+        final AST.ASTNode node;
+        final Env env;
+        int state;
+        List<? extends AST.ASTNode> block;
+        boolean wantsValue; // a CALL used as an expression
+        int counter, limit; // START loops
+        Evaluator.Function function; // CALLs
+        FrameEnv frame;
+        Value[] arguments; // the memo key, for memoized functions
+
+        Task(AST.ASTNode node, Env env) {
+            this.node = node;
+            this.env = env;
+        }
+    }
+
+    private final Evaluator eval;
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+    private final ArrayDeque<Value> values = new ArrayDeque<>();
+    private final Map<AST.ASTNode, Boolean> mayCall = new IdentityHashMap<>();
+    private Task task; // the task being stepped
+
+    StackEvaluator(Evaluator eval) {
+        this.eval = eval;
+    }
+
+    Value run(AST.Program p, Env env) {
+        tasks.push(new Task(p, env));
+        while (!tasks.isEmpty()) {
+            task = tasks.peek();
+            if (task.node == null)
+                stepBlock();
+            else
+                task.node.accept(this, task.env);
+        }
+        return null;
+    }
+
+    // ---- the stacks ----
+
+    /** Evaluates a node: recursively if it cannot CALL, else as a new task. */
+    private void push(AST.ASTNode node, Env env) {
+        if (!mayCall(node)) {
+            Value v = node.accept(eval, env);
+            if (node instanceof AST.Exp)
+                values.push(v);
+            return;
+        }
+        tasks.push(new Task(node, env));
+    }
+
+    private void pushBlock(List<? extends AST.ASTNode> block, Env env) {
+        if (block == null || block.isEmpty())
+            return;
+        Task t = new Task(null, env);
+        t.block = block;
+        tasks.push(t);
+    }
+
+    private void stepBlock() {
+        if (task.counter == task.block.size()) {
+            tasks.pop();
+            return;
+        }
+        push(task.block.get(task.counter++), task.env);
+    }
+
+    /** Finishes the current task. */
+    private Void done() {
+        tasks.pop();
+        return null;
+    }
+
+    /** Finishes the current task with a result. */
+    private Void done(Value v) {
+        tasks.pop();
+        values.push(v);
+        return null;
+    }
+
+    private boolean mayCall(AST.ASTNode node) {
+        Boolean b = mayCall.get(node);
+        if (b == null) {
+            b = CallFinder.find(node);
+            mayCall.put(node, b);
+        }
+        return b;
+    }
+
+    // ---- nodes that contain calls ----
+
+    @Override
+    public Void visit(AST.Program p, Env env) {
+        switch (task.state++) {
+        case 0:
+            push(p.staticDivision(), env);
+            return null;
+        case 1:
+            push(p.dynamicDivision(), env);
+            return null;
+        default:
+            return done();
+        }
+    }
+
+    @Override
+    public Void visit(AST.StaDiv d, Env env) {
+        done();
+        pushBlock(d.getStatements(), env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.DynDiv d, Env env) {
+        done();
+        pushBlock(d.getStatements(), env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.ProgId sd, Env env) {
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Auth sd, Env env) {
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Date sd, Env env) {
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Const sd, Env env) {
+        if (task.state++ == 0) {
+            push(sd.value(), env);
+            return null;
+        }
+        eval.defineConst(sd, values.pop());
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.IdExp e, Env env) {
+        return done(e.accept(eval, env));
+    }
+
+    @Override
+    public Void visit(AST.NumExp e, Env env) {
+        return done(e.accept(eval, env));
+    }
+
+    @Override
+    public Void visit(AST.StrExp e, Env env) {
+        return done(e.accept(eval, env));
+    }
+
+    /** Evaluates both operands, then applies the operator. */
+    private Void binary(AST.OperatorExp e, Env env) {
+        switch (task.state++) {
+        case 0:
+            push(e.left(), env);
+            return null;
+        case 1:
+            push(e.right(), env);
+            return null;
+        default:
+            Value right = values.pop();
+            Value left = values.pop();
+            return done(e.apply(left, right));
+        }
+    }
+
+    /**
+     * Evaluates the left operand of OR (or = true) or AND, then the right
+     * one only if the left does not decide the result.
+     */
+    private Void logical(AST.BinaryExp e, Env env, boolean or) {
+        switch (task.state++) {
+        case 0:
+            push(e.left(), env);
+            return null;
+        case 1:
+            if (Operators.isTrue(values.pop()) == or)
+                return done(Operators.truth(or));
+            push(e.right(), env);
+            return null;
+        default:
+            return done(Operators.truth(Operators.isTrue(values.pop())));
+        }
+    }
+
+    @Override
+    public Void visit(AST.DisjExp e, Env env) {
+        return logical(e, env, true);
+    }
+
+    @Override
+    public Void visit(AST.ConjExp e, Env env) {
+        return logical(e, env, false);
+    }
+
+    @Override
+    public Void visit(AST.CompExp e, Env env) {
+        return binary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.SumExp e, Env env) {
+        return binary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.TermExp e, Env env) {
+        return binary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.PowExp e, Env env) {
+        return binary(e, env);
+    }
+
+    @Override
+    public Void visit(AST.FactorExp e, Env env) {
+        done();
+        push(e.getExpr(), env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.GroupExp e, Env env) {
+        done();
+        push(e.getExpr(), env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.UnaryOpExp e, Env env) {
+        if (task.state++ == 0) {
+            push(e.getExpr(), env);
+            return null;
+        }
+        Value operand = values.pop();
+        if (e.getOperator().equals("-"))
+            return done(Operators.neg(operand));
+        throw new RuntimeException("Unknown operator: " + e.getOperator());
+    }
+
+    @Override
+    public Void visit(AST.CallExp e, Env env) {
+        done();
+        Task call = new Task(e.getCall(), env);
+        call.wantsValue = true;
+        tasks.push(call);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.Assign dd, Env env) {
+        if (task.state++ == 0) {
+            push(dd.getExpression(), env);
+            return null;
+        }
+        eval.store(dd, dd.getIdentifier(), dd.getType(), values.pop(), env);
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Print dd, Env env) {
+        if (task.state++ == 0) {
+            push(dd.getOutput(), env);
+            return null;
+        }
+        eval.display(values.pop());
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Input dd, Env env) {
+        dd.accept(eval, env);
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.IfStmt dd, Env env) {
+        boolean holds;
+        if (!mayCall(dd.getCondition())) {
+            holds = eval.test(dd.getCondition(), env);
+        } else if (task.state++ == 0) {
+            push(dd.getCondition(), env);
+            return null;
+        } else {
+            holds = Operators.isTrue(values.pop());
+        }
+        done();
+        pushBlock(holds ? dd.getThenBranch() : dd.getElseBranch(), env);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.LoopStmt dd, Env env) {
+        switch (task.state) {
+        case 0:
+            task.state = 1;
+            push(dd.getStart(), env);
+            return null;
+        case 1:
+            task.state = 2;
+            push(dd.getEnd(), env);
+            return null;
+        case 2:
+            task.limit = (int) values.pop().asNumber();
+            task.counter = (int) values.pop().asNumber();
+            if (task.counter > task.limit)
+                return done();
+            task.state = 3;
+            break;
+        default:
+            if (task.counter == task.limit)
+                return done();
+            task.counter++;
+        }
+        eval.storeNumber(dd, dd.getIdentifier(), task.counter, env);
+        pushBlock(dd.getBody(), env);
+        return null;
+    }
+
+    /**
+     * Checks the function, evaluates the arguments into a new frame one at
+     * a time, runs the body as a block in that frame (unless the function's
+     * memo cache has the result), and finally pushes the result if the CALL
+     * is part of an expression.
+     */
+    @Override
+    public Void visit(AST.CallStmt dd, Env env) {
+        List<AST.Exp> args = dd.getArguments();
+        Evaluator.Function f = task.function;
+        if (task.state == 0) {
+            f = task.function = eval.function(dd);
+            task.frame = f.frame();
+        } else if (task.state <= args.size()) {
+            task.frame.set(0, task.state - 1, values.pop().plain());
+        } else {
+            Value result = eval.returnValue(f, task.frame);
+            if (f.memo != null)
+                f.memo.put(task.arguments, result);
+            return returned(result);
+        }
+        if (task.state < args.size()) {
+            push(args.get(task.state), env);
+        } else {
+            if (f.memo != null) {
+                task.arguments = task.frame.arguments(f.arity);
+                Value result = f.memo.get(task.arguments);
+                if (result != null)
+                    return returned(result);
+            }
+            pushBlock(f.def.getBody(), task.frame);
+        }
+        task.state++;
+        return null;
+    }
+
+    /** Finishes a CALL, with its result if it is part of an expression. */
+    private Void returned(Value result) {
+        tasks.pop();
+        if (task.wantsValue)
+            values.push(result);
+        return null;
+    }
+
+    @Override
+    public Void visit(AST.FuncDef dd, Env env) {
+        dd.accept(eval, env);
+        return done();
+    }
+
+    @Override
+    public Void visit(AST.Rand dd, Env env) {
+        switch (task.state++) {
+        case 0:
+            push(dd.getMin(), env);
+            return null;
+        case 1:
+            push(dd.getMax(), env);
+            return null;
+        default:
+            Value max = values.pop();
+            Value min = values.pop();
+            eval.random(dd, min, max, env);
+            return done();
+        }
+    }
+}
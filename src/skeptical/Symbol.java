@@ -0,0 +1,69 @@
+package skeptical;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interned identifier. The parser turns every name in a program into a
+ * Symbol through one global table, so two occurrences of a name, in the
+ * same program or in different ones, are the same object. Environments
+ * compare symbols by reference and hash them by a number fixed when the
+ * symbol was created, without looking at the characters again, and the
+ * heap holds one copy of each name however often it occurs.
+ *
+ * Symbols are never removed from the table; there are as many as there
+ * are distinct names in the programs a JVM has parsed.
+ */
+public final class Symbol {
+    private static final ConcurrentHashMap<String, Symbol> TABLE = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final String name;
+    private final int id;
+    private final int hash;
+
+    private Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+        this.hash = id * 0x9E3779B9; // Fibonacci hashing spreads consecutive ids
+    }
+
+    /** Returns the symbol for name, creating it the first time. */
+    public static Symbol of(String name) {
+        Symbol s = TABLE.get(name);
+        if (s != null)
+            return s;
+        return TABLE.computeIfAbsent(name, n -> new Symbol(n, NEXT_ID.getAndIncrement()));
+    }
+
+    /** Returns the symbol for name, or null if no program has used that name. */
+    public static Symbol find(String name) {
+        return TABLE.get(name);
+    }
+
+    /** How many symbols have been created. */
+    public static int count() {
+        return TABLE.size();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** A number unique to this symbol, in order of creation from 0. */
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // equals is Object's: symbols are unique per name.
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,413 @@
+package skeptical;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static type pass, run on a resolved Program before it executes. It
+ * infers for every variable whether the values it can hold are all
+ * numbers, all strings, or either, from
+ * <ul>
+ * <li>literals and the result types of the operators,</li>
+ * <li>FIX constants,</li>
+ * <li>AS locks: a SET ... AS NUMBER binds a number or fails, and so does
+ * any later write to a variable that such a SET has certainly locked,</li>
+ * <li>the arguments CALLs pass to a function's parameters, and the return
+ * variables of the functions a CALL can reach.</li>
+ * </ul>
+ * A type belongs to a variable, not to a point in the program: a variable
+ * is a NUMBER if every write to it is one. Since writes depend on reads,
+ * the pass repeats until no type changes.
+ *
+ * With the types settled, it reports before anything runs the errors an
+ * operation raises whenever it is reached: arithmetic on a string,
+ * ordering a number against a string, a SET that breaks its AS clause or
+ * an earlier lock, a SET of a FIX constant. The messages are the ones the
+ * program would fail with at runtime. As with a compiler, code that never
+ * runs is checked too.
+ *
+ * It also marks the operator nodes whose operands are both proven
+ * numbers (see AST.OperatorExp.proveNumbers), so they skip their guards.
+ */
+public class TypeChecker implements AST.Visitor<TypeChecker.Type> {
+
+    /** What an expression can evaluate to. NONE: nothing, because it never completes. */
+    enum Type {
+        NONE, NUMBER, STRING, ANY;
+
+        Type join(Type other) {
+            if (this == other || other == NONE)
+                return this;
+            return this == NONE ? other : ANY;
+        }
+    }
+
+    /** A function local, which has a type of its own in each definition. */
+    private record Local(AST.FuncDef function, int slot) { }
+
+    private final Map<Object, Type> types = new HashMap<>(); // by Symbol for globals, Local for locals
+    private final Set<Symbol> constants = new HashSet<>();
+    private final List<List<AST.FuncDef>> definitions = new ArrayList<>(); // by function index
+    private final Map<AST.FuncDef, AST.FuncDef> enclosing = new HashMap<>();
+    private final ArrayDeque<AST.FuncDef> bodies = new ArrayDeque<>(); // innermost first
+    private Map<Object, Boolean> locks = new HashMap<>(); // certainly locked here: true for NUMBER
+    private boolean changed;
+    private boolean last; // the pass that reports errors and marks nodes
+
+    /** Checks a program the Resolver has addressed; throws the first error found. */
+    public AST.Program check(AST.Program p) {
+        types.clear();
+        constants.clear();
+        definitions.clear();
+        enclosing.clear();
+        bodies.clear();
+        collectFunctions(p.dynamicDivision().getStatements(), null);
+        last = false;
+        do {
+            changed = false;
+            locks = new HashMap<>();
+            p.accept(this, null);
+        } while (changed);
+        last = true;
+        locks = new HashMap<>();
+        p.accept(this, null);
+        return p;
+    }
+
+    private void collectFunctions(List<AST.Statement> statements, AST.FuncDef outer) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements) {
+            if (s instanceof AST.FuncDef f) {
+                while (definitions.size() <= f.getFunctionIndex())
+                    definitions.add(new ArrayList<>());
+                definitions.get(f.getFunctionIndex()).add(f);
+                enclosing.put(f, outer);
+                collectFunctions(f.getBody(), f);
+            } else if (s instanceof AST.LoopStmt l)
+                collectFunctions(l.getBody(), outer);
+            else if (s instanceof AST.IfStmt i) {
+                collectFunctions(i.getThenBranch(), outer);
+                collectFunctions(i.getElseBranch(), outer);
+            }
+        }
+    }
+
+    private void error(String message) {
+        if (last)
+            throw new RuntimeException(message);
+    }
+
+    /** The key of the variable at (depth, slot) as seen from inside function f (null at the top level). */
+    private Object key(int depth, int slot, Symbol symbol, AST.FuncDef f) {
+        if (depth == AST.GLOBAL)
+            return symbol;
+        for (; depth > 0; depth--)
+            f = enclosing.get(f);
+        return new Local(f, slot);
+    }
+
+    private Object key(AST.Addressed node) {
+        return key(node.depth(), node.slot(), node.symbol(), bodies.peek());
+    }
+
+    private Type typeOf(Object key) {
+        return types.getOrDefault(key, Type.NONE);
+    }
+
+    private void widen(Object key, Type type) {
+        Type old = typeOf(key);
+        Type joined = old.join(type);
+        if (joined != old) {
+            types.put(key, joined);
+            changed = true;
+        }
+    }
+
+    private static boolean mismatch(Type type, boolean number) {
+        return type == (number ? Type.STRING : Type.NUMBER);
+    }
+
+    /**
+     * Records a write of a value of the given type. checked is whether the
+     * write certainly happens when its statement runs, so that its errors
+     * may be reported: true for SET. typeLock is the AS clause, or null.
+     */
+    private void bind(AST.Addressed node, String name, Type type, String typeLock, boolean checked) {
+        Object key = key(node);
+        Boolean locked = locks.get(key);
+        if (checked) {
+            if (node.depth() == AST.GLOBAL && constants.contains(node.symbol()))
+                error("Cannot reassign constant: " + name);
+            if (locked != null && mismatch(type, locked))
+                error("Type error: " + name + " is locked to " + (locked ? "NUMBER" : "STRING"));
+        }
+        if (typeLock != null) {
+            boolean number;
+            try {
+                number = Operators.lockedToNumber(typeLock);
+            } catch (RuntimeException e) {
+                error(e.getMessage());
+                widen(key, Type.NONE);
+                return;
+            }
+            if (checked && mismatch(type, number))
+                error("Type error: " + name + " is not a " + (number ? "NUMBER" : "STRING"));
+            type = number ? Type.NUMBER : Type.STRING;
+            locks.put(key, number);
+        } else if (locked != null) {
+            type = locked ? Type.NUMBER : Type.STRING;
+        }
+        widen(key, type);
+    }
+
+    /** The type of an operand that must be a number. */
+    private Type number(Type operand) {
+        if (operand == Type.STRING)
+            error("Type error: not a number");
+        return operand == Type.NONE ? Type.NONE : Type.NUMBER;
+    }
+
+    private Type arithmetic(AST.BinaryExp e) {
+        Type left = e.left().accept(this, null);
+        Type right = e.right().accept(this, null);
+        if (number(left) == Type.NONE || number(right) == Type.NONE)
+            return Type.NONE;
+        if (last && left == Type.NUMBER && right == Type.NUMBER && e instanceof AST.OperatorExp o)
+            o.proveNumbers();
+        return Type.NUMBER;
+    }
+
+    private void statements(List<AST.Statement> statements) {
+        if (statements == null)
+            return;
+        for (AST.Statement s : statements)
+            s.accept(this, null);
+    }
+
+    @Override
+    public Type visit(AST.Program p, Env env) {
+        p.staticDivision().accept(this, env);
+        p.dynamicDivision().accept(this, env);
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.StaDiv d, Env env) {
+        for (AST.StaDecl decl : d.getStatements())
+            decl.accept(this, env);
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.DynDiv d, Env env) {
+        statements(d.getStatements());
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.ProgId sd, Env env) {
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Auth sd, Env env) {
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Date sd, Env env) {
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Const sd, Env env) {
+        widen(sd.symbol(), sd.value().accept(this, env));
+        constants.add(sd.symbol());
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.IdExp e, Env env) {
+        return typeOf(key(e));
+    }
+
+    @Override
+    public Type visit(AST.NumExp e, Env env) {
+        return Type.NUMBER;
+    }
+
+    @Override
+    public Type visit(AST.StrExp e, Env env) {
+        return Type.STRING;
+    }
+
+    private Type truth(AST.BinaryExp e) {
+        Type left = e.left().accept(this, null);
+        Type right = e.right().accept(this, null);
+        return left == Type.NONE || right == Type.NONE ? Type.NONE : Type.NUMBER;
+    }
+
+    @Override
+    public Type visit(AST.DisjExp e, Env env) {
+        return truth(e);
+    }
+
+    @Override
+    public Type visit(AST.ConjExp e, Env env) {
+        return truth(e);
+    }
+
+    @Override
+    public Type visit(AST.CompExp e, Env env) {
+        Type left = e.left().accept(this, env);
+        Type right = e.right().accept(this, env);
+        if (left == Type.NONE || right == Type.NONE)
+            return Type.NONE;
+        boolean ordering = !(e instanceof AST.EqExp || e instanceof AST.NeExp);
+        if (ordering && (left == Type.NUMBER && right == Type.STRING || left == Type.STRING && right == Type.NUMBER))
+            error("Type error: cannot compare a number with a string");
+        if (last && left == Type.NUMBER && right == Type.NUMBER)
+            e.proveNumbers();
+        return Type.NUMBER;
+    }
+
+    @Override
+    public Type visit(AST.SumExp e, Env env) {
+        if (!(e instanceof AST.AddExp))
+            return arithmetic(e);
+        Type left = e.left().accept(this, env);
+        Type right = e.right().accept(this, env);
+        if (left == Type.NONE || right == Type.NONE)
+            return Type.NONE;
+        if (left == Type.STRING || right == Type.STRING)
+            return Type.STRING;
+        if (left == Type.NUMBER && right == Type.NUMBER) {
+            if (last)
+                e.proveNumbers();
+            return Type.NUMBER;
+        }
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visit(AST.TermExp e, Env env) {
+        return arithmetic(e);
+    }
+
+    @Override
+    public Type visit(AST.PowExp e, Env env) {
+        return arithmetic(e);
+    }
+
+    @Override
+    public Type visit(AST.FactorExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Type visit(AST.GroupExp e, Env env) {
+        return e.getExpr().accept(this, env);
+    }
+
+    @Override
+    public Type visit(AST.UnaryOpExp e, Env env) {
+        return number(e.getExpr().accept(this, env));
+    }
+
+    @Override
+    public Type visit(AST.CallExp e, Env env) {
+        return e.getCall().accept(this, env);
+    }
+
+    @Override
+    public Type visit(AST.Assign dd, Env env) {
+        bind(dd, dd.getIdentifier(), dd.getExpression().accept(this, env), dd.getType(), true);
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Print dd, Env env) {
+        dd.getOutput().accept(this, env);
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Input dd, Env env) {
+        bind(dd, dd.getIdentifier(), Type.ANY, null, false);
+        return Type.NONE;
+    }
+
+    /** Branches lock what both of them lock. */
+    @Override
+    public Type visit(AST.IfStmt dd, Env env) {
+        dd.getCondition().accept(this, env);
+        Map<Object, Boolean> before = locks;
+        locks = new HashMap<>(before);
+        statements(dd.getThenBranch());
+        Map<Object, Boolean> then = locks;
+        locks = new HashMap<>(before);
+        statements(dd.getElseBranch());
+        locks.entrySet().removeIf(lock -> !lock.getValue().equals(then.get(lock.getKey())));
+        return Type.NONE;
+    }
+
+    /** The body may not run, so what it locks is forgotten after the loop. */
+    @Override
+    public Type visit(AST.LoopStmt dd, Env env) {
+        number(dd.getStart().accept(this, env));
+        number(dd.getEnd().accept(this, env));
+        bind(dd, dd.getIdentifier(), Type.NUMBER, null, false);
+        Map<Object, Boolean> before = locks;
+        locks = new HashMap<>(before);
+        statements(dd.getBody());
+        locks = before;
+        return Type.NONE;
+    }
+
+    /** Binds the arguments to the parameters of every definition the CALL may reach, and returns their results. */
+    @Override
+    public Type visit(AST.CallStmt dd, Env env) {
+        List<AST.Exp> args = dd.getArguments();
+        Type[] argTypes = new Type[args.size()];
+        for (int i = 0; i < argTypes.length; i++)
+            argTypes[i] = args.get(i).accept(this, env);
+        int index = dd.getFunctionIndex();
+        Type result = Type.NONE;
+        if (index < 0 || index >= definitions.size())
+            return result;
+        for (AST.FuncDef f : definitions.get(index)) {
+            if (f.getParameters().size() != argTypes.length)
+                continue;
+            for (int i = 0; i < argTypes.length; i++)
+                widen(new Local(f, i), argTypes[i]);
+            result = result.join(typeOf(key(f.getReturnAddress().depth(), f.getReturnAddress().slot(), f.getReturnSymbol(), f)));
+        }
+        return result;
+    }
+
+    /** Checks a body with no locks in force: its locals are bound afresh on every call. */
+    @Override
+    public Type visit(AST.FuncDef dd, Env env) {
+        Map<Object, Boolean> outer = locks;
+        locks = new HashMap<>();
+        bodies.push(dd);
+        statements(dd.getBody());
+        bodies.pop();
+        locks = outer;
+        return Type.NONE;
+    }
+
+    @Override
+    public Type visit(AST.Rand dd, Env env) {
+        number(dd.getMin().accept(this, env));
+        number(dd.getMax().accept(this, env));
+        bind(dd, dd.getIdentifier(), Type.NUMBER, null, false);
+        return Type.NONE;
+    }
+}
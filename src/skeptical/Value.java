@@ -1,5 +1,35 @@
 package skeptical;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A runtime value. Numbers are kept in a primitive double field rather
+ * than boxed, and strings in a String field; the type tag says which one
+ * is live. Values are immutable, so small integral numbers are shared
+ * through {@link #of(double)} instead of being allocated anew.
+ *
+ * Comparisons, AND and OR yield TRUE or FALSE, which are the shared
+ * numbers 1 and 0, so a truth value never allocates. Truth values are
+ * deliberately plain numbers, as they have always been in the language:
+ * they print as 1 and 0 and take part in arithmetic, and programs rely on
+ * both.
+ *
+ * A long string made by + is kept as a prefix of a Buffer that it shares
+ * with the string it was appended to. Appending to the value that ends the
+ * buffer appends in place, so SET s TO s + ... in a loop is linear rather
+ * than quadratic; any other value that shares the buffer sees only its own
+ * prefix, which later appends never change. The String is made when
+ * something reads it (DISPLAY, a comparison, hashing) and kept.
+ *
+ * The price is retention: every value on a buffer keeps the whole buffer
+ * alive, however short its own prefix. A prefix kept in a variable while
+ * the loop goes on pins everything appended after it, and the spare
+ * capacity too, until the prefix itself is dropped (ConcatBench measures
+ * this).
+ */
 public class Value {
     public enum Type {
         NUMBER,
@@ -7,43 +37,149 @@ public class Value {
         CONSTANT
     }
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final Value[] CACHE = new Value[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++)
+            CACHE[i] = new Value(i + CACHE_LOW);
+    }
+
+    public static final Value ZERO = of(0);
+    public static final Value ONE = of(1);
+    public static final Value TRUE = ONE;
+    public static final Value FALSE = ZERO;
+
+    // Shorter results of + are plain Strings: copying them costs less than a buffer.
+    private static final int BUFFER_MIN = 64;
+
     private final Type type;
-    private final Object value;
+    private final double number;
+    private String string; // null for a number, or until a built string is read
+    private final Buffer buffer; // shared by a chain of appends, or null
+    private final int length; // this string's prefix of buffer
+    private final boolean locked; // bound with SET ... AS, keeps its type
 
     public Value(double number) {
         this.type = Type.NUMBER;
-        this.value = number;
+        this.number = number;
+        this.string = null;
+        this.buffer = null;
+        this.length = 0;
+        this.locked = false;
     }
 
     public Value(String str) {
         this.type = Type.STRING;
-        this.value = str;
+        this.number = 0;
+        this.string = str;
+        this.buffer = null;
+        this.length = 0;
+        this.locked = false;
+    }
+
+    private Value(Buffer buffer, int length) {
+        this.type = Type.STRING;
+        this.number = 0;
+        this.string = null;
+        this.buffer = buffer;
+        this.length = length;
+        this.locked = false;
     }
 
     public Value(Value other, boolean isConstant) {
-        this.type = isConstant ? Type.CONSTANT : other.type;
-        this.value = other.value;
+        this(other, isConstant ? Type.CONSTANT : other.type, other.locked);
+    }
+
+    private Value(Value other, Type type, boolean locked) {
+        this.type = type;
+        this.number = other.number;
+        this.string = other.string;
+        this.buffer = other.buffer;
+        this.length = other.length;
+        this.locked = locked;
+    }
+
+    /**
+     * Returns a number value, reusing a shared instance for small integers
+     * (and positive zero) so hot arithmetic does not allocate.
+     */
+    public static Value of(double number) {
+        int i = (int) number;
+        if (i == number && i >= CACHE_LOW && i <= CACHE_HIGH
+                && (i != 0 || Double.doubleToRawLongBits(number) == 0L))
+            return CACHE[i - CACHE_LOW];
+        return new Value(number);
+    }
+
+    /**
+     * The string left followed by right, for +. The result shares left's
+     * buffer when left ends it, and starts a buffer of its own when it is
+     * long enough to be appended to again.
+     */
+    public static Value concat(Value left, Value right) {
+        Buffer b = left.buffer;
+        if (b != null) {
+            String tail = right.asString();
+            if (b.append(left.length, tail))
+                return new Value(b, left.length + tail.length());
+        }
+        String head = left.asString(), tail = right.asString();
+        int n = head.length() + tail.length();
+        if (n < BUFFER_MIN)
+            return new Value(head.concat(tail));
+        Buffer buffer = new Buffer(head, 2 * n);
+        buffer.append(head.length(), tail);
+        return new Value(buffer, n);
     }
 
     public Type getType() {
         return type;
     }
 
+    public boolean isNumber() {
+        return string == null && buffer == null;
+    }
+
     public double asNumber() {
-        if (type == Type.NUMBER || type == Type.CONSTANT) return ((Number) value).doubleValue();
+        if (isNumber()) return number;
         throw new RuntimeException("Type error: not a number");
     }
 
+    /** The number, without checking that this is one: for operands proven numeric. */
+    public double uncheckedNumber() {
+        return number;
+    }
+
     public String asString() {
-        if (type == Type.STRING || type == Type.CONSTANT) return String.valueOf(value);
-        if (type == Type.NUMBER) return Double.toString((double) value);
-        throw new RuntimeException("Type error: cannot convert to string");
+        if (string != null) return string;
+        if (buffer == null) return Numbers.toString(number);
+        return string = buffer.prefix(length);
     }
 
     public boolean isConstant() {
         return type == Type.CONSTANT;
     }
 
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /** Returns this value marked as type-locked. */
+    public Value lock() {
+        return locked ? this : new Value(this, isNumber() ? Type.NUMBER : Type.STRING, true);
+    }
+
+    /**
+     * Returns this value without the constant or lock marks of the binding
+     * it was read from, for copying into another variable.
+     */
+    public Value plain() {
+        if (!locked && type != Type.CONSTANT) return this;
+        return isNumber() ? of(number) : new Value(this, Type.STRING, false);
+    }
+
     @Override
     public String toString() {
         return asString();
@@ -53,11 +189,110 @@ public class Value {
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Value other)) return false;
-        return this.value.equals(other.value);
+        if (isNumber())
+            return other.isNumber() && Double.compare(number, other.number) == 0;
+        return !other.isNumber() && asString().equals(other.asString());
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return isNumber() ? Double.hashCode(number) : asString().hashCode();
+    }
+
+    /**
+     * The characters of a chain of appends, one byte each while they all
+     * fit in Latin-1 and two once one doesn't. end counts the characters
+     * some value has claimed: an append claims the next ones with a CAS
+     * from the length of the value it appends to, so only a value that ends
+     * the buffer appends in place, and of two threads appending to the same
+     * one, one wins and the other copies. Claimed characters are never
+     * written again, so a value reads its prefix without a lock. A new array
+     * (grown, or widened) is published with a release store once it holds
+     * the characters; a value itself reaches other threads through
+     * GlobalEnv, whose release stores and acquiring reads make its prefix
+     * visible there.
+     */
+    private static final class Buffer {
+        private static final VarHandle END;
+        private static final VarHandle ARRAY;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                END = lookup.findVarHandle(Buffer.class, "end", int.class);
+                ARRAY = lookup.findVarHandle(Buffer.class, "array", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private Object array; // byte[] while the characters are Latin-1, then char[]
+        private int end;
+
+        Buffer(String head, int capacity) {
+            if (latin1(head)) {
+                byte[] bytes = new byte[capacity];
+                for (int i = 0; i < head.length(); i++)
+                    bytes[i] = (byte) head.charAt(i);
+                array = bytes;
+            } else {
+                char[] chars = new char[capacity];
+                head.getChars(0, head.length(), chars, 0);
+                array = chars;
+            }
+            end = head.length();
+        }
+
+        /** Appends tail at from, if from is the end of the buffer; returns whether it did. */
+        boolean append(int from, String tail) {
+            int to = from + tail.length();
+            if (to < 0 || !END.compareAndSet(this, from, to))
+                return false;
+            // The value ending at from was made after every earlier append
+            // wrote its characters, so this thread sees them, and the array.
+            Object a = array;
+            if (a instanceof byte[] bytes && latin1(tail)) {
+                if (to > bytes.length)
+                    bytes = Arrays.copyOf(bytes, grown(bytes.length, to));
+                for (int i = 0; i < tail.length(); i++)
+                    bytes[from + i] = (byte) tail.charAt(i);
+                a = bytes;
+            } else {
+                char[] chars = a instanceof byte[] bytes ? widened(bytes, from, grown(bytes.length, to))
+                        : (char[]) a;
+                if (to > chars.length)
+                    chars = Arrays.copyOf(chars, grown(chars.length, to));
+                tail.getChars(0, tail.length(), chars, from);
+                a = chars;
+            }
+            if (a != array)
+                ARRAY.setRelease(this, a);
+            return true;
+        }
+
+        String prefix(int length) {
+            Object a = ARRAY.getAcquire(this);
+            if (a instanceof byte[] bytes)
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            return new String((char[]) a, 0, length);
+        }
+
+        private static boolean latin1(String s) {
+            for (int i = 0; i < s.length(); i++)
+                if (s.charAt(i) > 0xFF)
+                    return false;
+            return true;
+        }
+
+        private static int grown(int capacity, int needed) {
+            return Math.max(needed, capacity * 2); // capacity * 2 < 0 on overflow
+        }
+
+        private static char[] widened(byte[] bytes, int length, int capacity) {
+            char[] chars = new char[capacity];
+            for (int i = 0; i < length; i++)
+                chars[i] = (char) (bytes[i] & 0xFF);
+            return chars;
+        }
     }
 }
@@ -1,9 +1,79 @@
 grammar skeptical;
 
+tokens { INDENT, DEDENT }
+
+@lexer::members {
+  // Blocks are delimited by indentation, as in Python. NEWLINE tokens carry
+  // the indentation of the line that follows them; nextToken() turns that
+  // into a single NEWLINE plus the INDENT/DEDENT tokens the parser expects,
+  // ignoring blank and comment-only lines.
+  private final java.util.ArrayDeque<Token> pending = new java.util.ArrayDeque<Token>();
+  private final java.util.ArrayDeque<Integer> indents = new java.util.ArrayDeque<Integer>();
+  private Token lastEmitted;
+  private int lineIndent = -1; // indentation seen since the last real token, -1 if none
+
+  // Called by setInputStream, so a pooled lexer starts each program clean.
+  @Override
+  public void reset() {
+    super.reset();
+    pending.clear();
+    indents.clear();
+    lastEmitted = null;
+    lineIndent = -1;
+  }
+
+  @Override
+  public Token nextToken() {
+    while (pending.isEmpty()) {
+      Token t = super.nextToken();
+      if (t.getType() == NEWLINE) {
+        lineIndent = indentationOf(t.getText());
+        continue;
+      }
+      if (t.getType() == EOF)
+        lineIndent = 0;
+      if (lineIndent >= 0 && lastEmitted != null) {
+        if (lastEmitted.getType() != NEWLINE && lastEmitted.getType() != skepticalParser.DEDENT)
+          pending.add(synthetic(NEWLINE, t));
+        int current = indents.isEmpty() ? 0 : indents.peek();
+        if (lineIndent > current) {
+          indents.push(current = lineIndent);
+          pending.add(synthetic(skepticalParser.INDENT, t));
+        }
+        while (lineIndent < current) {
+          indents.pop();
+          pending.add(synthetic(skepticalParser.DEDENT, t));
+          current = indents.isEmpty() ? 0 : indents.peek();
+        }
+        if (lineIndent != current)
+          throw new RuntimeException("Inconsistent indentation at line " + t.getLine());
+      }
+      lineIndent = -1;
+      pending.add(t);
+    }
+    lastEmitted = pending.poll();
+    return lastEmitted;
+  }
+
+  private static int indentationOf(String newline) {
+    int column = 0;
+    for (int i = newline.lastIndexOf('\n') + 1; i < newline.length(); i++)
+      column = newline.charAt(i) == '\t' ? (column / 4 + 1) * 4 : column + 1;
+    return column;
+  }
+
+  private Token synthetic(int type, Token next) {
+    CommonToken t = new CommonToken(type, type == NEWLINE ? "\n" : "");
+    t.setLine(next.getLine());
+    t.setCharPositionInLine(0);
+    return t;
+  }
+}
+
 program returns [Program ast]
-    locals [StaDiv staticDiv, DynDiv dynamicDiv]
     : s=static_division
       d=dynamic_division
+      EOF
       {$ast = new Program($s.ast, $d.ast);}
   ;
 
@@ -11,7 +81,7 @@ static_division returns [StaDiv ast]
     locals [ArrayList<StaDecl> decls]
     @init { $decls = new ArrayList<StaDecl>();}
   : 'STATIC' 'DIVISION.' NEWLINE
-    (decl=stadecl { $decls.add($decl.ast); })*  
+    (decl=stadecl { $decls.add($decl.ast); })*
     { $ast = new StaDiv($decls); }
   ;
 
@@ -19,7 +89,7 @@ dynamic_division returns [DynDiv ast]
     locals [ArrayList<Statement> statements]
     @init { $statements = new ArrayList<Statement>(); }
   : 'DYNAMIC' 'DIVISION.' NEWLINE
-    (state=statement { $statements.add($state.ast); })* 
+    (state=statement { $statements.add($state.ast); })*
     { $ast = new DynDiv($statements); }
   ;
 
@@ -27,15 +97,14 @@ stadecl returns [StaDecl ast]
   : 'PROGRAM-ID.' id=Identifier '.' NEWLINE { $ast = new ProgId($id.text); }
   | 'AUTHOR.' s=STRING '.' NEWLINE { $ast = new Auth($s.text); }
   | 'DATE-WRITTEN.' s=STRING '.' NEWLINE { $ast = new Date($s.text); }
-  | constant { $ast = $constant.ast; }
+  | constant NEWLINE { $ast = $constant.ast; }
   ;
 
 constant returns [StaDecl ast]
-@init { Exp valueExp = null; }
   : 'FIX' id=Identifier 'TO' e=expression
     {
-      if ($e.ast instanceof Identifier) {
-        throw new RuntimeException("Cannot assign constant to a variable reference like '" + ((Identifier)$e.ast).name + "'"); 
+      if ($e.ast instanceof IdExp) {
+        throw new RuntimeException("Cannot assign constant to a variable reference like '" + ((IdExp)$e.ast).id() + "'");
       }
       $ast = new Const($id.text, $e.ast);
     }
@@ -43,27 +112,27 @@ constant returns [StaDecl ast]
   ;
 
 statement returns [Statement ast]
-  : assign { $ast = $assign.ast; }
-  | print { $ast = $print.ast; }
-  | input { $ast = $input.ast; }
+  : assign NEWLINE { $ast = $assign.ast; }
+  | print NEWLINE { $ast = $print.ast; }
+  | input NEWLINE { $ast = $input.ast; }
   | ifstmt { $ast = $ifstmt.ast; }
   | loop_stmt { $ast = $loop_stmt.ast; }
-  | callstmt { $ast = $callstmt.ast; }
+  | callstmt '.' NEWLINE { $ast = $callstmt.ast; }
   | funcdef { $ast = $funcdef.ast; }
-  | rand { $ast = $rand.ast; }
+  | rand NEWLINE { $ast = $rand.ast; }
   ;
 
 assign returns [Statement ast]
     locals [Assign assignment]
     @init { $assignment = new Assign(); }
-  : 'SET' id=Identifier 'TO' expr=expression 
+  : 'SET' id=Identifier 'TO' expr=expression
     {
         $assignment.setIdentifier($id.text);
         $assignment.setExpression($expr.ast);
     }
-    ('AS' value= (STRING | Number)
+    ('AS' value= (STRING | Number | Identifier)
         { $assignment.setType($value.text); }
-    )? 
+    )?
     '.'
     { $ast = $assignment; }
   ;
@@ -77,48 +146,58 @@ input returns [Statement ast]
   ;
 
 ifstmt returns [Statement ast]
-    locals [ArrayList<Statement> thenStmts = new ArrayList<Statement>(), ArrayList<Statement> elseStmts = new ArrayList<Statement>(), int indentLevel = 0]
+    locals [ArrayList<Statement> thenStmts = new ArrayList<Statement>(), ArrayList<Statement> elseStmts = new ArrayList<Statement>()]
   : 'IF' cond=expression 'THEN' NEWLINE
-    INDENT { indentLevel++; }
-    (t=statement { thenStmts.add($t.ast); })* 
-    ('ELSE' NEWLINE 
-      INDENT { indentLevel++; }
-      (e=statement { elseStmts.add($e.ast); })*
+    INDENT
+    (t=statement { $thenStmts.add($t.ast); })*
+    DEDENT
+    ('ELSE' NEWLINE
+      INDENT
+      (e=statement { $elseStmts.add($e.ast); })*
       DEDENT
-    )? DEDENT
-    { $ast = new IfStmt($cond.ast, thenStmts, elseStmts); }
+    )?
+    { $ast = new IfStmt($cond.ast, $thenStmts, $elseStmts); }
   ;
 
 loop_stmt returns [Statement ast]
-    locals [ArrayList<Statement> body = new ArrayList<Statement>(), int indentLevel = 0;]
-  : 'START' id=Identifier 'AS' start=expression 'TO' end=expression 'DOING' NEWLINE
-    INDENT { indentLevel++; }
-    (stmt=statement { body.add($stmt.ast); })* DEDENT
-    { $ast = new LoopStmt($id.text, $start.ast, $end.ast, body); }
+    locals [ArrayList<Statement> body = new ArrayList<Statement>()]
+  : 'START' id=Identifier 'AS' from=expression 'TO' to=expression 'DOING' NEWLINE
+    INDENT
+    (stmt=statement { $body.add($stmt.ast); })* DEDENT
+    { $ast = new LoopStmt($id.text, $from.ast, $to.ast, $body); }
   ;
 
 funcdef returns [Statement ast]
-    locals [ArrayList<Statement> body = new ArrayList<Statement>(), int indentLevel = 0;]
-  : 'FUNCTION' id=Identifier ('WITH' args=arglist)? '.' NEWLINE
-    INDENT { indentLevel++; }
-  (stmt=statement { body.add($stmt.ast); })* DEDENT
-  'RETURN' returnExpr=expression '.' 
-  { $ast = new FuncDef($id.text, $args.ast, body, $returnExpr.ast); }
+    locals [ArrayList<Statement> body = new ArrayList<Statement>(), List<String> params = new ArrayList<String>()]
+  : 'FUNCTION' id=Identifier ('WITH' p=paramlist { $params = $p.ast; })? '.' NEWLINE
+    INDENT
+  (stmt=statement { $body.add($stmt.ast); })* DEDENT
+  'RETURN' ret=Identifier '.' NEWLINE
+  { $ast = new FuncDef($id.text, $params, $body, $ret.text); }
 ;
 
-callstmt returns [Statement ast]
-: 'CALL' id=Identifier (args=arglist)? '.' 
-  { $ast = new CallStmt($id.text, $args.ast); }
+paramlist returns [List<String> ast]
+    locals [ArrayList<String> names = new ArrayList<String>()]
+  : p=Identifier { $names.add($p.text); }
+    (',' p2=Identifier { $names.add($p2.text); })*
+    { $ast = $names; }
+  ;
+
+callstmt returns [CallStmt ast]
+    locals [List<Exp> args = new ArrayList<Exp>()]
+: 'CALL' id=Identifier ('WITH' a=arglist { $args = $a.ast; })?
+  { $ast = new CallStmt($id.text, $args); }
 ;
-arglist returns [Exp ast]
+
+arglist returns [List<Exp> ast]
     locals [ArrayList<Exp> argsList = new ArrayList<Exp>()]
-  : e=expression { argsList.add($e.ast); }
-    (',' e2=expression { argsList.add($e2.ast); })*
-    { $ast = argsList; }
+  : e=expression { $argsList.add($e.ast); }
+    (',' e2=expression { $argsList.add($e2.ast); })*
+    { $ast = $argsList; }
   ;
 
 rand returns [Statement ast]
-  : 'SET' id=Identifier 'TO RANDOM' start=expression 'TO' end=expression '.' { $ast = new RandStmt($id.text, $start.ast, $end.ast); }
+  : 'SET' id=Identifier 'TO' 'RANDOM' min=expression 'TO' max=expression '.' { $ast = new Rand($id.text, $min.ast, $max.ast); }
   ;
 
 expression returns [Exp ast]
@@ -126,58 +205,58 @@ expression returns [Exp ast]
   ;
 
 disjunction returns [Exp ast]
-  : conjunction { $ast = $conjunction.ast; }
-    ( 'OR' c=conjunction { $ast = new BinOp($ast, $c.ast, "OR"); } )*
+  : c1=conjunction { $ast = $c1.ast; }
+    ( 'OR' c=conjunction { $ast = new DisjExp($ast, $c.ast); } )*
   ;
 
 conjunction returns [Exp ast]
-  : comparison { $ast = $comparison.ast; }
-    ( 'AND' c=comparison { $ast = new BinOp($ast, $c.ast, "AND"); } )*
+  : c1=comparison { $ast = $c1.ast; }
+    ( 'AND' c=comparison { $ast = new ConjExp($ast, $c.ast); } )*
   ;
 
 comparison returns [Exp ast]
-  : sum { $ast = $sum.ast; }
-    ( op=('==' | '!=' | '<' | '<=' | '>' | '>=') s=sum 
-        { $ast = new BinOp($ast, $s.ast, $op.text); }
+  : s1=sum { $ast = $s1.ast; }
+    ( op=('==' | '!=' | '<' | '<=' | '>' | '>=') s=sum
+        { $ast = CompExp.of($ast, $op.text, $s.ast); }
     )*
   ;
 
 sum returns [Exp ast]
-  : term { $ast = $term.ast; }
-    ( op=('+' | '-') t=term { $ast = new BinOp($ast, $t.ast, $op.text); } )*
+  : t1=term { $ast = $t1.ast; }
+    ( op=('+' | '-') t=term { $ast = SumExp.of($ast, $op.text, $t.ast); } )*
   ;
 
 term returns [Exp ast]
-  : power { $ast = $power.ast; }
-    ( op=('*' | '/' | 'MOD') p=power { $ast = new BinOp($ast, $p.ast, $op.text); } )*
+  : p1=power { $ast = $p1.ast; }
+    ( op=('*' | '/' | 'MOD') p=power { $ast = TermExp.of($ast, $op.text, $p.ast); } )*
   ;
 
 power returns [Exp ast]
-  : factor { $ast = $factor.ast; }
-    ( '**' p=power { $ast = new BinOp($ast, $p.ast, "**"); } )?
+  : f=factor { $ast = $f.ast; }
+    ( '**' p=power { $ast = new PowExp($ast, $p.ast); } )?
   ;
 
 factor returns [Exp ast]
-  : n=Number { $ast = new NumExp($n.text); }
+  : n=Number { $ast = new NumExp(Double.parseDouble($n.text)); }
+  | s=STRING { $ast = new StrExp($s.text.substring(1, $s.text.length() - 1)); }
   | id=Identifier { $ast = new IdExp($id.text); }
-  | '(' e=expression ')' { $ast = $e.ast; }
-  | '-' f=factor { $ast = new NegExp($f.ast); }
+  | c=callstmt { $ast = new CallExp($c.ast); }
+  | '(' e=expression ')' { $ast = new GroupExp($e.ast); }
+  | '-' f=factor { $ast = new UnaryOpExp("-", $f.ast); }
   ;
 
-Number : DIGIT+ ;
+Number : DIGIT+ ('.' DIGIT+)? ;
 Identifier : Letter LetterOrDigit*;
 
 fragment DIGIT : [0-9];
 fragment Letter : [a-zA-Z$_] | ~[\u0000-\u00FF\uD800-\uDBFF] {Character.isJavaIdentifierStart(_input.LA(-1))}? | [\uD800-\uDBFF] [\uDC00-\uDFFF] {Character.isJavaIdentifierStart(Character.toCodePoint((char)_input.LA(-2), (char)_input.LA(-1)))}?;
 fragment LetterOrDigit : [a-zA-Z0-9$_] | ~[\u0000-\u00FF\uD800-\uDBFF] {Character.isJavaIdentifierPart(_input.LA(-1))}? | [\uD800-\uDBFF] [\uDC00-\uDFFF] {Character.isJavaIdentifierPart(Character.toCodePoint((char)_input.LA(-2), (char)_input.LA(-1)))}?;
 
-STRING: '"' (~['\\']|('\\' .))* '"';
-INDENT: '\t'; // assuming 1 tab character for Indent (adjust as necessary)
-DEDENT: '\t'; // assuming 1 tab character for Dedent (adjust as necessary)
+STRING: '"' (~["\\\r\n]|('\\' .))* '"';
 
 
 AT : '@';
 ELLIPSIS : '...';
 WS : [ \t\u000C]+ -> skip;
-NEWLINE : '\r'? '\n' ;
+NEWLINE : ('\r'? '\n' [ \t]*)+ ;
 Comment : '#' ~[\r\n]* -> skip;
@@ -0,0 +1,97 @@
+package skeptical.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import skeptical.AST;
+import skeptical.Compiler;
+import skeptical.Evaluator;
+import skeptical.Lowerer;
+import skeptical.Optimizer;
+import skeptical.Reader;
+
+/**
+ * A small checking harness shared by the tests in this directory. A check
+ * runs a program in each of the given modes, the way BatchRunner does but
+ * without falling back to the Evaluator, and compares what it DISPLAYs
+ * with the expected lines; equal() checks a string computed directly.
+ * Failures are reported as they happen; done() exits with status 1 if
+ * there were any.
+ */
+public final class Check {
+    public enum Mode {
+        /** The tree-walking Evaluator. */
+        INTERPRET,
+        /** The Evaluator on its explicit stack (--deep). */
+        DEEP,
+        /** JVM bytecode from the Compiler (--compile). */
+        COMPILE,
+        /** The Lowerer's register instructions (--ir). */
+        IR
+    }
+
+    private static int checks;
+    private static int failures;
+
+    private Check() { }
+
+    /** Wraps the statements of a dynamic division into a program. */
+    public static String program(String dynamicDivision) {
+        return "STATIC DIVISION.\nPROGRAM-ID. test.\nDYNAMIC DIVISION.\n" + dynamicDivision;
+    }
+
+    /** Checks that source prints exactly the expected lines in every one of modes. */
+    public static void output(String name, String source, String expected, Mode... modes) {
+        for (Mode mode : modes) {
+            checks++;
+            String actual;
+            try {
+                actual = run(source, mode);
+            } catch (RuntimeException | StackOverflowError e) {
+                actual = e.toString();
+            }
+            if (!actual.equals(expected)) {
+                failures++;
+                System.out.println("FAIL " + name + " (" + mode + "): expected [" + expected.strip()
+                        + "] but got [" + actual.strip() + "]");
+            }
+        }
+    }
+
+    private static String run(String source, Mode mode) {
+        Reader reader = new Reader();
+        AST.Program p = new Optimizer().optimize(reader.parse(source));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        switch (mode) {
+        case COMPILE:
+            new Compiler().compile(p).execute(reader, out);
+            break;
+        case IR:
+            new Lowerer().lower(p).execute(reader, out);
+            break;
+        default:
+            Evaluator eval = new Evaluator(reader, out);
+            eval.setExplicitStack(mode == Mode.DEEP);
+            eval.valueOf(p);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Checks that actual is the expected string. */
+    public static void equal(String name, String expected, String actual) {
+        checks++;
+        if (!actual.equals(expected)) {
+            failures++;
+            System.out.println("FAIL " + name + ": expected [" + expected + "] but got [" + actual + "]");
+        }
+    }
+
+    /** Reports the totals, and exits with status 1 if any check failed. */
+    public static void done() {
+        System.out.println(checks + " check(s), " + failures + " failed");
+        if (failures > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,57 @@
+package skeptical.test;
+
+import static skeptical.test.Check.Mode.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import skeptical.Value;
+
+/**
+ * Strings built by + in place (see Value.concat). A value keeps its own
+ * prefix however the buffer it shares grows, widens past Latin-1 or is
+ * appended to by other threads.
+ */
+public class ConcatTest {
+    private static final String TEN = "0123456789";
+
+    public static void main(String[] args) throws InterruptedException {
+        Check.output("prefixes of a shared buffer", Check.program(
+                "SET s TO \"\".\n"
+                + "START i AS 1 TO 10 DOING\n"
+                + "\tSET s TO s + \"" + TEN + "\".\n"
+                + "SET p TO s.\n"
+                + "SET s TO s + \"\u00e9\u20ac\".\n"
+                + "SET t TO p + \"\u00e9\u20ac\".\n"
+                + "SET q TO p + \"!\".\n"
+                + "DISPLAY q.\n"
+                + "DISPLAY p == s.\n"
+                + "DISPLAY s == t.\n"
+                + "SET s TO s + \"x\".\n"
+                + "DISPLAY s == t + \"x\".\n"),
+                TEN.repeat(10) + "!\n0\n1\n1\n", INTERPRET, DEEP, COMPILE, IR);
+
+        Value base = Value.concat(new Value(TEN.repeat(7)), new Value(TEN));
+        List<Thread> threads = new ArrayList<>();
+        String[] built = new String[8];
+        for (int t = 0; t < built.length; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                Value v = base;
+                Value piece = new Value(id % 2 == 0 ? "t" + id : "\u20ac" + id);
+                for (int i = 0; i < 10_000; i++)
+                    v = Value.concat(v, piece);
+                built[id] = v.asString();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        for (int t = 0; t < built.length; t++)
+            Check.equal("appends from thread " + t, base.asString()
+                    + (t % 2 == 0 ? "t" + t : "\u20ac" + t).repeat(10_000), built[t]);
+        Check.equal("the shared value", TEN.repeat(8), base.asString());
+        Check.done();
+    }
+}
@@ -0,0 +1,44 @@
+package skeptical.test;
+
+import static skeptical.test.Check.Mode.*;
+
+/**
+ * Counted loops at the edges of their int range. A loop exits once its
+ * counter reaches the end bound, before incrementing it, so an end bound
+ * of Integer.MAX_VALUE can't wrap the counter around.
+ */
+public class LoopTest {
+    public static void main(String[] args) {
+        Check.output("end bound of Integer.MAX_VALUE", Check.program(
+                "START i AS 2147483646 TO 2147483647 DOING\n"
+                + "\tDISPLAY i.\n"
+                + "DISPLAY \"done\".\n"),
+                "2147483646\n2147483647\ndone\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.output("loop of one iteration", Check.program(
+                "START i AS 2147483647 TO 2147483647 DOING\n"
+                + "\tDISPLAY i.\n"),
+                "2147483647\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.output("empty range", Check.program(
+                "START i AS 3 TO 2 DOING\n"
+                + "\tDISPLAY i.\n"
+                + "DISPLAY \"none\".\n"),
+                "none\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.output("counter passed to a CALL and kept after the loop", Check.program(
+                "FUNCTION twice WITH n.\n"
+                + "\tSET r TO n * 2.\n"
+                + "RETURN r.\n"
+                + "FUNCTION f WITH k.\n"
+                + "\tSET t TO 0.\n"
+                + "\tSTART i AS 1 TO k DOING\n"
+                + "\t\tSET t TO t + CALL twice WITH i.\n"
+                + "\tSET t TO t + i.\n"
+                + "RETURN t.\n"
+                + "DISPLAY CALL f WITH 4.\n"
+                + "SET j TO 0 AS NUMBER.\n"
+                + "START j AS 1 TO 3 DOING\n"
+                + "\tDISPLAY j.\n"
+                + "DISPLAY j + 10.\n"),
+                "24\n1\n2\n3\n13\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.done();
+    }
+}
@@ -0,0 +1,70 @@
+package skeptical.test;
+
+import static skeptical.test.Check.Mode.*;
+
+/**
+ * Recursion a million calls deep. A tail call must not grow the Java stack
+ * in any mode, except that compiled code only turns a function's tail
+ * calls to itself into jumps; recursion that is not in tail position needs
+ * --deep, which keeps its call stack on the heap.
+ */
+public class RecursionTest {
+    private static final int DEPTH = 1_000_000;
+
+    public static void main(String[] args) {
+        Check.output("tail recursion", Check.program(
+                "FUNCTION down WITH n, acc.\n"
+                + "\tSET r TO acc.\n"
+                + "\tIF n > 0 THEN\n"
+                + "\t\tSET r TO CALL down WITH n - 1, acc + 2.\n"
+                + "RETURN r.\n"
+                + "DISPLAY CALL down WITH " + DEPTH + ", 0.\n"),
+                2 * DEPTH + "\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.output("mutual tail recursion", Check.program(
+                "FUNCTION even WITH n.\n"
+                + "\tIF n == 0 THEN\n"
+                + "\t\tSET r TO \"even\".\n"
+                + "\tELSE\n"
+                + "\t\tSET r TO CALL odd WITH n - 1.\n"
+                + "RETURN r.\n"
+                + "FUNCTION odd WITH n.\n"
+                + "\tIF n == 0 THEN\n"
+                + "\t\tSET r TO \"odd\".\n"
+                + "\tELSE\n"
+                + "\t\tSET r TO CALL even WITH n - 1.\n"
+                + "RETURN r.\n"
+                + "DISPLAY CALL even WITH " + (DEPTH + 1) + ".\n"),
+                "odd\n", INTERPRET, DEEP, IR);
+        Check.output("tail calls to other functions", Check.program(
+                "FUNCTION g WITH n.\n"
+                + "\tSET r TO n * 2.\n"
+                + "RETURN r.\n"
+                + "FUNCTION f WITH n.\n"
+                + "\tSET r TO CALL g WITH n.\n"
+                + "RETURN r.\n"
+                + "FUNCTION even WITH n.\n"
+                + "\tIF n == 0 THEN\n"
+                + "\t\tSET r TO \"even\".\n"
+                + "\tELSE\n"
+                + "\t\tSET r TO CALL odd WITH n - 1.\n"
+                + "RETURN r.\n"
+                + "FUNCTION odd WITH n.\n"
+                + "\tIF n == 0 THEN\n"
+                + "\t\tSET r TO \"odd\".\n"
+                + "\tELSE\n"
+                + "\t\tSET r TO CALL even WITH n - 1.\n"
+                + "RETURN r.\n"
+                + "DISPLAY CALL f WITH 4.\n"
+                + "DISPLAY CALL even WITH 1001.\n"),
+                "8\nodd\n", INTERPRET, DEEP, COMPILE, IR);
+        Check.output("non-tail recursion", Check.program(
+                "FUNCTION sum WITH n.\n"
+                + "\tSET r TO 0.\n"
+                + "\tIF n > 0 THEN\n"
+                + "\t\tSET r TO n + CALL sum WITH n - 1.\n"
+                + "RETURN r.\n"
+                + "DISPLAY CALL sum WITH " + DEPTH + ".\n"),
+                (long) DEPTH * (DEPTH + 1) / 2 + "\n", DEEP);
+        Check.done();
+    }
+}
@@ -0,0 +1,57 @@
+package skeptical.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import skeptical.AST;
+import skeptical.Evaluator;
+import skeptical.Optimizer;
+import skeptical.Reader;
+
+/**
+ * A parsed program that is shared between runs, as the ParseCache shares
+ * it. Each run optimizes the shared tree and resolves what the Optimizer
+ * built; another run doing the same in the middle of this one must not
+ * change the addresses this one reads. The PROMPT below stands in for that
+ * other run, deterministically.
+ */
+public class SharedProgramTest {
+    public static void main(String[] args) {
+        // Removing the dead IF removes the local dead, so the optimized
+        // tree's slots differ from the shared tree's.
+        String source = Check.program(
+                "FUNCTION f WITH n.\n"
+                + "\tIF 0 THEN\n"
+                + "\t\tSET dead TO 1.\n"
+                + "\tSET a TO n.\n"
+                + "\tPROMPT x WITH \"x?\".\n"
+                + "\tSET b TO a + x.\n"
+                + "RETURN b.\n"
+                + "DISPLAY CALL f WITH 5.\n");
+        AST.Program[] shared = new AST.Program[1];
+        BufferedReader in = new BufferedReader(new StringReader("")) {
+            @Override
+            public String readLine() {
+                new Optimizer().optimize(shared[0]);
+                return "1";
+            }
+        };
+        Reader reader = new Reader(in, new PrintStream(OutputStream.nullOutputStream()));
+        shared[0] = reader.parse(source);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String result;
+        try {
+            new Evaluator(reader, new PrintStream(bytes, true, StandardCharsets.UTF_8))
+                    .valueOf(new Optimizer().optimize(shared[0]));
+            result = bytes.toString(StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            result = e.toString();
+        }
+        Check.equal("optimized again during a run", "6\n", result);
+        Check.done();
+    }
+}